@@ -4,17 +4,34 @@ import pacman.controllers.Controller;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.jfr.SearchIterationEvent;
 import static Agents.MinimaxAgent.evaluationFunction;
 
 import java.util.ArrayList;
 import java.util.EnumMap;
 
-public class AlphaBetaAgent extends Controller<MOVE> {
+public class AlphaBetaAgent extends Controller<MOVE> implements SearchAgent {
 
     public int treeDepth;
 
+    // weights of MinimaxAgent.evaluationFunction
+    private final double[] weights;
+
+    // time the current move is due, and whether the search at the current depth ran out of time
+    private long timeDue = -1;
+    private boolean aborted;
+
+    private final SearchStats stats = new SearchStats();
+
     public AlphaBetaAgent(int d) {
+        this(d, MinimaxAgent.DEFAULT_WEIGHTS);
+    }
+
+    public AlphaBetaAgent(int d, double[] weights) {
+        if (weights.length != MinimaxAgent.WEIGHT_NAMES.length)
+            throw new IllegalArgumentException("Expected " + MinimaxAgent.WEIGHT_NAMES.length + " weights but got " + weights.length);
         this.treeDepth = d;
+        this.weights = weights.clone();
     }
 
     public boolean compare(int a, int b, boolean isGreater) {
@@ -29,8 +46,13 @@ public class AlphaBetaAgent extends Controller<MOVE> {
             depth--;
         }
 
+        if (isCancelled(timeDue)) {
+            aborted = true;
+            return new MoveScorePair<>(null, 0);
+        }
+
         if (game.gameOver() || depth == 0) {
-            return new MoveScorePair<>(null, evaluationFunction(game));
+            return new MoveScorePair<>(null, evaluationFunction(game, weights));
         }
 
         ArrayList<MoveScorePair<MOVE, Integer>> actionsValues = new ArrayList<>();
@@ -48,6 +70,8 @@ public class AlphaBetaAgent extends Controller<MOVE> {
             v = Double.POSITIVE_INFINITY;
         }
 
+        stats.expanded(moves.length);
+
         for (MOVE m : moves) {
             Game state = game.copy();
             MOVE pacmanMove = MOVE.NEUTRAL;
@@ -67,13 +91,17 @@ public class AlphaBetaAgent extends Controller<MOVE> {
             actionsValues.add(new MoveScorePair<>(m, value));
 
             if (agentIndex == 0) {
+                v = Math.max(v, value);
                 if (v > beta) {
+                    stats.cutoffs++;
                     break;
                 }
                 alpha = Math.max(alpha, v);
 
             } else {
+                v = Math.min(v, value);
                 if (v < alpha) {
+                    stats.cutoffs++;
                     break;
                 }
                 beta = Math.min(beta, v);
@@ -97,11 +125,46 @@ public class AlphaBetaAgent extends Controller<MOVE> {
         return best;
     }
 
+    @Override
+    public SearchStats getSearchStats() {
+        return stats;
+    }
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
-        double alpha = Double.NEGATIVE_INFINITY;
-        double beta = Double.POSITIVE_INFINITY;
-        return alphaBeta(game, 0, this.treeDepth, alpha, beta).move;
+        long start = System.nanoTime();
+        this.timeDue = timeDue;
+        aborted = false;
+        MOVE best = game.getPacmanLastMoveMade();
+
+        // iterative deepening: publish the move of every completed depth, drop the one that ran out of time
+        for (int depth = 1; depth <= this.treeDepth; depth++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            long nodes = stats.nodesExpanded;
+            event.begin();
+
+            MOVE move = alphaBeta(game, 0, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).move;
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.controller = getClass().getSimpleName();
+                event.tick = game.getTotalTime();
+                event.iteration = depth;
+                event.depth = depth;
+                event.nodes = stats.nodesExpanded - nodes;
+                event.completed = !aborted;
+                event.commit();
+            }
+            if (aborted) break;
+
+            best = move;
+            publishMove(best);
+            stats.reachedDepth(depth);
+        }
+
+        stats.searches++;
+        stats.timeNanos += System.nanoTime() - start;
+        return best;
     }
 
     public static class MoveScorePair<M, S> {
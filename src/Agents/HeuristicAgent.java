@@ -11,7 +11,29 @@ import pacman.game.Game;
 
 public class HeuristicAgent extends Controller<MOVE> {
 
-    public static Controller<EnumMap<GHOST, MOVE>> ghosts = new StarterGhosts();
+    // names of the weights of getGameScore, in the order of the weight vector
+    public static final String[] WEIGHT_NAMES = {"food", "foodDistance", "ghostNear", "ghostMiddle", "ghostFar",
+            "ghostEaten", "scaredGhostDistance", "capsule", "capsuleDistance", "neutral"};
+    public static final int FOOD = 0, FOOD_DISTANCE = 1, GHOST_NEAR = 2, GHOST_MIDDLE = 3, GHOST_FAR = 4,
+            GHOST_EATEN = 5, SCARED_GHOST_DISTANCE = 6, CAPSULE = 7, CAPSULE_DISTANCE = 8, NEUTRAL = 9;
+
+    // the weights the agent was tuned to by hand
+    public static final double[] DEFAULT_WEIGHTS = {100, -0.1, -2000, 0, 0, 50, 0, 100, 10, -10};
+
+    // model of the ghosts to look one step ahead with; each agent has its own, since controllers keep state
+    public final Controller<EnumMap<GHOST, MOVE>> ghosts = new StarterGhosts();
+
+    private final double[] weights;
+
+    public HeuristicAgent() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    public HeuristicAgent(double[] weights) {
+        if (weights.length != WEIGHT_NAMES.length)
+            throw new IllegalArgumentException("Expected " + WEIGHT_NAMES.length + " weights but got " + weights.length);
+        this.weights = weights.clone();
+    }
 
     public static int hasFood(Game game) {
         return game.wasPillEaten() ? 1 : 0;
@@ -26,12 +48,16 @@ public class HeuristicAgent extends Controller<MOVE> {
     }
 
     public static double getGameScore(Game state) {
+        return getGameScore(state, DEFAULT_WEIGHTS);
+    }
+
+    public static double getGameScore(Game state, double[] weights) {
         if (state.wasPacManEaten()) return Double.NEGATIVE_INFINITY;
 
-        double foodScore = 100 * hasFood(state);
+        double foodScore = weights[FOOD] * hasFood(state);
         double activeGhostScore = 0;
-        double scaredGhostScore = 50 * hasScaredGhost(state);
-        double capsuleScore = 100 * hasCapsule(state);
+        double scaredGhostScore = weights[GHOST_EATEN] * hasScaredGhost(state);
+        double capsuleScore = weights[CAPSULE] * hasCapsule(state);
 
         int pacmanIndex = state.getPacmanCurrentNodeIndex();
 
@@ -59,39 +85,41 @@ public class HeuristicAgent extends Controller<MOVE> {
 
         if (distanceToFood.size() > 0) {
             int closestFood = Collections.min(distanceToFood);
-            foodScore -= 0.1 * closestFood;
+            foodScore += weights[FOOD_DISTANCE] * closestFood;
         }
 
+        // ghostNear and capsuleDistance keep the integer division they were tuned with, so they only count when
+        // adjacent; the other inverse distances are real ones
         if (distancesToActiveGhosts.size() > 0) {
             int closestActiveGhost = Collections.min(distancesToActiveGhosts);
             if (closestActiveGhost < 5) {
-                activeGhostScore += -2000 * (double) (1 / closestActiveGhost);
+                activeGhostScore += weights[GHOST_NEAR] * (double) (1 / closestActiveGhost);
             } else if (closestActiveGhost < 10) {
-                activeGhostScore += -0 * (double) (1 / closestActiveGhost);
+                activeGhostScore += weights[GHOST_MIDDLE] * (1.0 / closestActiveGhost);
             } else {
-                activeGhostScore += -0 * (double) (5 - closestActiveGhost);
+                activeGhostScore += weights[GHOST_FAR] * (double) (5 - closestActiveGhost);
             }
         }
 
         if (distancesToScaredGhosts.size() > 0) {
             int closestScaredGhost = Collections.min(distancesToScaredGhosts);
-            scaredGhostScore += 0 * (double) (1 / closestScaredGhost);
+            scaredGhostScore += weights[SCARED_GHOST_DISTANCE] * (1.0 / closestScaredGhost);
         }
 
         if (distanceToCapsule.size() > 0 && distancesToScaredGhosts.size() == 0) {
             int closestCapsule = Collections.min(distanceToCapsule);
-            capsuleScore += 10 * (double) (1 / closestCapsule);
+            capsuleScore += weights[CAPSULE_DISTANCE] * (double) (1 / closestCapsule);
         }
 
 
         return foodScore + activeGhostScore + scaredGhostScore + capsuleScore;
     }
 
-    public static double getScoreOfMove(Game game, MOVE m) {
+    public double getScoreOfMove(Game game, MOVE m) {
         Game state = game.copy();
         state.advanceGame(m, ghosts.getMove(state, System.currentTimeMillis()));
-        double neutralPenalty = m == MOVE.NEUTRAL ? 10 : 0;
-        return getGameScore(state) - neutralPenalty;
+        double neutralPenalty = m == MOVE.NEUTRAL ? weights[NEUTRAL] : 0;
+        return getGameScore(state, weights) + neutralPenalty;
     }
 
     @Override
@@ -4,18 +4,41 @@ import pacman.controllers.Controller;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.jfr.SearchIterationEvent;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
 
 
-public class MinimaxAgent extends Controller<MOVE> {
+public class MinimaxAgent extends Controller<MOVE> implements SearchAgent {
+
+    // names of the weights of evaluationFunction, in the order of the weight vector
+    public static final String[] WEIGHT_NAMES = {"score", "foodDistance", "activeGhost", "scaredGhostDistance",
+            "powerPillsLeft", "pillsLeft", "noScaredGhosts"};
+
+    // the weights the evaluation was tuned to by hand
+    public static final double[] DEFAULT_WEIGHTS = {1, -1.5, -2, -2, -20, -4, 2};
 
     public int treeDepth;
 
+    private final double[] weights;
+
+    // time the current move is due, and whether the search at the current depth ran out of time
+    private long timeDue = -1;
+    private boolean aborted;
+
+    private final SearchStats stats = new SearchStats();
+
     public MinimaxAgent(int d) {
+        this(d, DEFAULT_WEIGHTS);
+    }
+
+    public MinimaxAgent(int d, double[] weights) {
+        if (weights.length != WEIGHT_NAMES.length)
+            throw new IllegalArgumentException("Expected " + WEIGHT_NAMES.length + " weights but got " + weights.length);
         this.treeDepth = d;
+        this.weights = weights.clone();
     }
 
     public boolean compare(int a, int b, boolean isGreater) {
@@ -23,6 +46,10 @@ public class MinimaxAgent extends Controller<MOVE> {
     }
 
     public static Integer evaluationFunction(Game state) {
+        return evaluationFunction(state, DEFAULT_WEIGHTS);
+    }
+
+    public static Integer evaluationFunction(Game state, double[] weights) {
         if (state.gameOver()) {
             if (state.wasPacManEaten())
                 return Integer.MIN_VALUE;
@@ -56,7 +83,10 @@ public class MinimaxAgent extends Controller<MOVE> {
             }
         }
 
-        int closestActiveGhost = Integer.MAX_VALUE, closestScaredGhost = Integer.MAX_VALUE;
+        // activeGhost keeps the integer division it was tuned with, so it only counts when adjacent; without edible
+        // ghosts noScaredGhosts applies instead of their distance (its default is the +2 that -2 * Integer.MAX_VALUE
+        // used to overflow to)
+        int closestActiveGhost = Integer.MAX_VALUE, closestScaredGhost = 0;
         if (distancesToActiveGhosts.size() > 0) {
             closestActiveGhost = Collections.min(distancesToActiveGhosts);
         }
@@ -65,12 +95,13 @@ public class MinimaxAgent extends Controller<MOVE> {
             closestScaredGhost = Collections.min(distancesToScaredGhosts);
         }
 
-        return (int) (currentScore +
-                -1.5 * closestFood +
-                -2 * (1/closestActiveGhost) +
-                -2 * closestScaredGhost +
-                -20 * powerPillsLeft +
-                -4 * pillsLeft);
+        return (int) (weights[0] * currentScore +
+                weights[1] * closestFood +
+                weights[2] * (1/closestActiveGhost) +
+                weights[3] * closestScaredGhost +
+                weights[4] * powerPillsLeft +
+                weights[5] * pillsLeft +
+                weights[6] * (distancesToScaredGhosts.isEmpty() ? 1 : 0));
     }
 
     public MoveScorePair<MOVE, Integer> minimax(Game game, int agentIndex, int depth) {
@@ -81,8 +112,13 @@ public class MinimaxAgent extends Controller<MOVE> {
             depth--;
         }
 
+        if (isCancelled(timeDue)) {
+            aborted = true;
+            return new MoveScorePair<>(null, 0);
+        }
+
         if (game.gameOver() || depth == 0) {
-            return new MoveScorePair<>(null, evaluationFunction(game));
+            return new MoveScorePair<>(null, evaluationFunction(game, weights));
         }
 
         ArrayList<MoveScorePair<MOVE, Integer>> actionsValues = new ArrayList<>();
@@ -96,6 +132,8 @@ public class MinimaxAgent extends Controller<MOVE> {
             moves = game.getPossibleMoves(game.getGhostCurrentNodeIndex(currentGhost));
         }
 
+        stats.expanded(moves.length);
+
         for (MOVE m : moves) {
             Game state = game.copy();
             MOVE pacmanMove = MOVE.NEUTRAL;
@@ -130,9 +168,46 @@ public class MinimaxAgent extends Controller<MOVE> {
         return best;
     }
 
+    @Override
+    public SearchStats getSearchStats() {
+        return stats;
+    }
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
-        return minimax(game, 0, this.treeDepth).move;
+        long start = System.nanoTime();
+        this.timeDue = timeDue;
+        aborted = false;
+        MOVE best = game.getPacmanLastMoveMade();
+
+        // iterative deepening: publish the move of every completed depth, drop the one that ran out of time
+        for (int depth = 1; depth <= this.treeDepth; depth++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            long nodes = stats.nodesExpanded;
+            event.begin();
+
+            MOVE move = minimax(game, 0, depth).move;
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.controller = getClass().getSimpleName();
+                event.tick = game.getTotalTime();
+                event.iteration = depth;
+                event.depth = depth;
+                event.nodes = stats.nodesExpanded - nodes;
+                event.completed = !aborted;
+                event.commit();
+            }
+            if (aborted) break;
+
+            best = move;
+            publishMove(best);
+            stats.reachedDepth(depth);
+        }
+
+        stats.searches++;
+        stats.timeNanos += System.nanoTime() - start;
+        return best;
     }
 
     public static class MoveScorePair<M, S> {
@@ -0,0 +1,177 @@
+package Agents.MonteCarlo;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+
+/**
+ * Ghost team policy used inside MCTS playouts. The returned map is owned by the policy and overwritten on the
+ * next call. Implementations must not allocate per call; each agent owns its own instances.
+ */
+public interface GhostRollout {
+
+    EnumMap<GHOST, MOVE> getMoves(Game state);
+
+    /**
+     * Shared plumbing: fills the reused move map, asking decide() only for ghosts at a decision point and
+     * letting the others carry on in their current direction.
+     */
+    abstract class Base implements GhostRollout {
+        protected static final MOVE[] MOVES = MOVE.values();
+        protected static final GHOST[] GHOSTS = GHOST.values();
+        protected final Random rnd = new Random();
+        private final EnumMap<GHOST, MOVE> moves = new EnumMap<>(GHOST.class);
+
+        @Override
+        public EnumMap<GHOST, MOVE> getMoves(Game state) {
+            RolloutTables tables = RolloutTables.get(state);
+            prepare(state, tables);
+
+            for (GHOST ghost : GHOSTS) {
+                if (state.doesGhostRequireAction(ghost)) {
+                    moves.put(ghost, decide(state, tables, ghost));
+                } else {
+                    moves.put(ghost, state.getGhostLastMoveMade(ghost));
+                }
+            }
+            return moves;
+        }
+
+        // Per-tick work shared by all ghosts
+        protected void prepare(Game state, RolloutTables tables) {
+        }
+
+        protected abstract MOVE decide(Game state, RolloutTables tables, GHOST ghost);
+
+        // Greedy non-reversing step towards (or away from) a target by path distance, like
+        // Game.getApproximateNextMoveTowardsTarget with DM.PATH
+        protected static MOVE step(Game state, RolloutTables tables, GHOST ghost, int target, boolean towards) {
+            int node = state.getGhostCurrentNodeIndex(ghost);
+            int reverse = RolloutTables.reverse(state.getGhostLastMoveMade(ghost));
+            int bestDir = -1;
+            int best = towards ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+
+            for (int dir = 0; dir < 4; dir++) {
+                int neighbour = tables.neighbour(node, dir);
+                if (dir != reverse && neighbour != -1) {
+                    int distance = state.getShortestPathDistance(neighbour, target);
+                    if (towards ? distance < best : distance > best) {
+                        best = distance;
+                        bestDir = dir;
+                    }
+                }
+            }
+            return bestDir < 0 ? state.getGhostLastMoveMade(ghost) : MOVES[bestDir];
+        }
+
+        protected MOVE randomStep(Game state, RolloutTables tables, GHOST ghost) {
+            int node = state.getGhostCurrentNodeIndex(ghost);
+            int reverse = RolloutTables.reverse(state.getGhostLastMoveMade(ghost));
+
+            int options = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                if (dir != reverse && tables.neighbour(node, dir) != -1) options |= 1 << dir;
+            }
+            if (options == 0) return state.getGhostLastMoveMade(ghost);
+
+            int pick = rnd.nextInt(Integer.bitCount(options));
+            while (pick-- > 0) options &= options - 1;
+            return MOVES[Integer.numberOfTrailingZeros(options)];
+        }
+    }
+
+    /**
+     * Every ghost always closes in on Pac-Man (approximates AggressiveGhosts).
+     */
+    final class Chase extends Base {
+        @Override
+        protected MOVE decide(Game state, RolloutTables tables, GHOST ghost) {
+            return step(state, tables, ghost, state.getPacmanCurrentNodeIndex(), true);
+        }
+    }
+
+    /**
+     * Flee when edible or when Pac-Man is near a power pill, otherwise chase with probability CONSISTENCY and
+     * wander at random (approximates StarterGhosts).
+     */
+    final class Flee extends Base {
+        private static final float CONSISTENCY = 0.5f;
+        private static final int PILL_PROXIMITY = 15;
+        private boolean closeToPower;
+
+        @Override
+        protected void prepare(Game state, RolloutTables tables) {
+            closeToPower = tables.closeToPower(state, state.getPacmanCurrentNodeIndex(), PILL_PROXIMITY);
+        }
+
+        @Override
+        protected MOVE decide(Game state, RolloutTables tables, GHOST ghost) {
+            int pacman = state.getPacmanCurrentNodeIndex();
+
+            if (state.getGhostEdibleTime(ghost) > 0 || closeToPower) return step(state, tables, ghost, pacman, false);
+            if (rnd.nextFloat() < CONSISTENCY) return step(state, tables, ghost, pacman, true);
+            return randomStep(state, tables, ghost);
+        }
+    }
+
+    /**
+     * Crowded ghosts away from Pac-Man scatter to their own power-pill corner, edible ghosts flee and the
+     * rest chase (approximates Legacy2TheReckoning).
+     */
+    final class Scatter extends Base {
+        private static final int CROWDED_DISTANCE = 30;
+        private static final int PACMAN_DISTANCE = 10;
+        private static final int PILL_PROXIMITY = 15;
+        // power pill each ghost retreats to, by GHOST ordinal (BLINKY, PINKY, INKY, SUE)
+        private static final int[] CORNER = {0, 2, 1, 3};
+        private boolean closeToPower, crowded;
+
+        @Override
+        protected void prepare(Game state, RolloutTables tables) {
+            closeToPower = tables.closeToPower(state, state.getPacmanCurrentNodeIndex(), PILL_PROXIMITY);
+
+            float distance = 0;
+            for (int i = 0; i < GHOSTS.length - 1; i++) {
+                for (int j = i + 1; j < GHOSTS.length; j++) {
+                    distance += state.getShortestPathDistance(state.getGhostCurrentNodeIndex(GHOSTS[i]), state.getGhostCurrentNodeIndex(GHOSTS[j]));
+                }
+            }
+            crowded = distance / 6 < CROWDED_DISTANCE;
+        }
+
+        @Override
+        protected MOVE decide(Game state, RolloutTables tables, GHOST ghost) {
+            int pacman = state.getPacmanCurrentNodeIndex();
+            int current = state.getGhostCurrentNodeIndex(ghost);
+            boolean nearPacman = state.getShortestPathDistance(pacman, current) < PACMAN_DISTANCE;
+
+            if (crowded && !nearPacman) {
+                int[] corners = tables.powerPillIndices;
+                return step(state, tables, ghost, corners[CORNER[ghost.ordinal()] % corners.length], true);
+            }
+            if (state.getGhostEdibleTime(ghost) > 0 || closeToPower) return step(state, tables, ghost, pacman, false);
+            return step(state, tables, ghost, pacman, true);
+        }
+    }
+
+    /**
+     * Adapter that drives the ghosts through a full ghost controller, as playouts did before the fast policies.
+     */
+    final class FromController implements GhostRollout {
+        private final Controller<EnumMap<GHOST, MOVE>> controller;
+
+        public FromController(Controller<EnumMap<GHOST, MOVE>> controller) {
+            this.controller = controller;
+        }
+
+        @Override
+        public EnumMap<GHOST, MOVE> getMoves(Game state) {
+            return controller.getMove(state, System.currentTimeMillis());
+        }
+    }
+}
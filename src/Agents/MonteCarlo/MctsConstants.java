@@ -1,10 +1,93 @@
 package Agents.MonteCarlo;
 
-public class MctsConstants {
-    public static final double C = 1.0f / Math.sqrt(2.0f);
-    public static final int ghost_dist = 9;
-    public static final int hunt_dist = 25;
-    public static final int TREE_LIMIT = 35;
-    public static final int SEARCH_TIME_LIMIT = 50;
-    public static final int SIMULATION_STEPS = 30;
+/**
+ * The tunable parameters of a MonteCarloAgent. Each agent has its own, so agents with different settings can
+ * play side by side (see MctsSweep); DEFAULT holds the values the agent was tuned to by hand. Instances are
+ * immutable: with() returns a copy with one parameter changed, and parse() reads the form toString() writes,
+ * e.g. "C=0.5,TREE_LIMIT=40" (parameters not named keep their default).
+ */
+public final class MctsConstants {
+    public static final String[] NAMES = {"C", "ghost_dist", "hunt_dist", "TREE_LIMIT", "SEARCH_TIME_LIMIT", "SIMULATION_STEPS"};
+
+    public static final MctsConstants DEFAULT = new MctsConstants(1.0f / Math.sqrt(2.0f), 9, 25, 35, 50, 30);
+
+    // max path distance between a ghost's stored and actual position for a kept subtree to be reused
+    public static final int REUSE_GHOST_TOLERANCE = 4;
+    // confidence the rollout cutoff needs before it ends a playout early
+    public static final double CUTOFF_THRESHOLD = 0.9;
+
+    // exploration constant of UCT
+    public final double C;
+    // ghosts closer than this are evaded while following a path
+    public final int ghost_dist;
+    // edible ghosts closer than this are hunted instead of searching
+    public final int hunt_dist;
+    // expansions per search
+    public final int TREE_LIMIT;
+    // milliseconds per search
+    public final int SEARCH_TIME_LIMIT;
+    // ticks per playout
+    public final int SIMULATION_STEPS;
+
+    public MctsConstants(double C, int ghost_dist, int hunt_dist, int TREE_LIMIT, int SEARCH_TIME_LIMIT, int SIMULATION_STEPS) {
+        this.C = C;
+        this.ghost_dist = ghost_dist;
+        this.hunt_dist = hunt_dist;
+        this.TREE_LIMIT = TREE_LIMIT;
+        this.SEARCH_TIME_LIMIT = SEARCH_TIME_LIMIT;
+        this.SIMULATION_STEPS = SIMULATION_STEPS;
+    }
+
+    // The value of the named parameter
+    public double get(String name) {
+        switch (name) {
+            case "C":
+                return C;
+            case "ghost_dist":
+                return ghost_dist;
+            case "hunt_dist":
+                return hunt_dist;
+            case "TREE_LIMIT":
+                return TREE_LIMIT;
+            case "SEARCH_TIME_LIMIT":
+                return SEARCH_TIME_LIMIT;
+            case "SIMULATION_STEPS":
+                return SIMULATION_STEPS;
+            default:
+                throw new IllegalArgumentException("Unknown MCTS parameter " + name);
+        }
+    }
+
+    // A copy with the named parameter set to the value (rounded for the integer ones)
+    public MctsConstants with(String name, double value) {
+        double[] values = new double[NAMES.length];
+
+        for (int i = 0; i < NAMES.length; i++) {
+            values[i] = NAMES[i].equals(name) ? value : get(NAMES[i]);
+        }
+
+        get(name); // rejects unknown names
+        return new MctsConstants(values[0], (int) Math.round(values[1]), (int) Math.round(values[2]),
+                (int) Math.round(values[3]), (int) Math.round(values[4]), (int) Math.round(values[5]));
+    }
+
+    public static MctsConstants parse(String spec) {
+        MctsConstants constants = DEFAULT;
+
+        for (String assignment : spec.split(",")) {
+            if (assignment.isBlank()) continue;
+
+            String[] parts = assignment.split("=");
+            if (parts.length != 2) throw new IllegalArgumentException("Expected name=value but got " + assignment);
+
+            constants = constants.with(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+        }
+        return constants;
+    }
+
+    @Override
+    public String toString() {
+        return "C=" + C + ",ghost_dist=" + ghost_dist + ",hunt_dist=" + hunt_dist + ",TREE_LIMIT=" + TREE_LIMIT
+                + ",SEARCH_TIME_LIMIT=" + SEARCH_TIME_LIMIT + ",SIMULATION_STEPS=" + SIMULATION_STEPS;
+    }
 }
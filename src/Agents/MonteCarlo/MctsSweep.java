@@ -0,0 +1,241 @@
+package Agents.MonteCarlo;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+import static pacman.game.Constants.DELAY;
+
+
+/**
+ * Tunes MctsConstants by playing games with many settings at once and dropping the bad ones early. Successive
+ * halving gives every setting a few games, keeps the best 1/eta of them by average score, gives those eta times
+ * as many games and so on, until one is left or the largest budget is reached. Hyperband runs successive halving
+ * several times, from many settings with few games to few settings with many games, since how early a setting
+ * can be judged is not known in advance.
+ *
+ * Games are played as in Executor.runExperiment() and run in parallel on a pool of threads, each game with its
+ * own agent and ghost controller. All settings play the same games: the j-th game of every setting uses the j-th
+ * game, ghost and reversal seeds drawn from new Random(seed), as Executor.runPairedExperiment() does, so the
+ * ghosts and the global reversals make the same random choices for every setting. A setting that is promoted
+ * keeps its scores and only plays the games it has not played yet.
+ *
+ * Usage: MctsSweep [-threads n] [-configs n] [-min games] [-max games] [-eta n] [-seed n] [-hyperband]
+ */
+public class MctsSweep {
+
+    // the range each parameter is sampled from, in the order of MctsConstants.NAMES; searches are cancelled
+    // CANCEL_MARGIN before the move is due, so longer search time limits would all behave the same
+    public static final double[] LOW = {0.1, 3, 5, 10, 10, 10};
+    public static final double[] HIGH = {2.0, 20, 50, 80, DELAY - Controller.CANCEL_MARGIN, 60};
+
+    private final ExecutorService pool;
+    private final LongFunction<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory;
+    private final long[] seeds, ghostSeeds, reversalSeeds;
+
+    // A setting under evaluation and the scores of the games it has played so far
+    public static class Candidate {
+        public final MctsConstants constants;
+        public final ArrayList<Integer> scores = new ArrayList<>();
+
+        public Candidate(MctsConstants constants) {
+            this.constants = constants;
+        }
+
+        public double mean() {
+            double sum = 0;
+            for (int score : scores) sum += score;
+            return scores.isEmpty() ? 0 : sum / scores.size();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f over %d games\t%s", mean(), scores.size(), constants);
+        }
+    }
+
+    // ghostFactory creates a ghost controller whose random choices are drawn from the given seed
+    public MctsSweep(int threads, LongFunction<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory, int maxGames, long seed) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.ghostFactory = ghostFactory;
+        this.seeds = new long[maxGames];
+        this.ghostSeeds = new long[maxGames];
+        this.reversalSeeds = new long[maxGames];
+
+        Random rnd = new Random(seed);
+        for (int i = 0; i < maxGames; i++) {
+            seeds[i] = rnd.nextLong();
+            ghostSeeds[i] = rnd.nextLong();
+            reversalSeeds[i] = rnd.nextLong();
+        }
+    }
+
+    // Draw settings uniformly from the ranges LOW to HIGH
+    public static List<MctsConstants> sample(int count, Random rnd) {
+        ArrayList<MctsConstants> samples = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            MctsConstants constants = MctsConstants.DEFAULT;
+            for (int p = 0; p < MctsConstants.NAMES.length; p++) {
+                constants = constants.with(MctsConstants.NAMES[p], LOW[p] + rnd.nextDouble() * (HIGH[p] - LOW[p]));
+            }
+            samples.add(constants);
+        }
+        return samples;
+    }
+
+    // Successive halving from minGames games per setting up to maxGames; returns the survivors, best first
+    public List<Candidate> successiveHalving(List<MctsConstants> settings, int minGames, int maxGames, int eta) throws InterruptedException {
+        if (maxGames > seeds.length) throw new IllegalArgumentException("Only " + seeds.length + " games were prepared");
+        if (minGames < 1 || minGames > maxGames)
+            throw new IllegalArgumentException("The minimum games " + minGames + " must be from 1 to the maximum " + maxGames);
+        if (eta < 2) throw new IllegalArgumentException("eta must be at least 2 but is " + eta);
+
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (MctsConstants constants : settings) candidates.add(new Candidate(constants));
+
+        for (int games = minGames; ; games = Math.min(games * eta, maxGames)) {
+            play(candidates, games);
+            candidates.sort(Comparator.comparingDouble(Candidate::mean).reversed());
+
+            System.out.println(candidates.size() + " settings after " + games + " games, best " + candidates.get(0));
+
+            if (games >= maxGames) return candidates;
+
+            int keep = Math.max(1, candidates.size() / eta);
+            candidates = new ArrayList<>(candidates.subList(0, keep));
+        }
+    }
+
+    // Hyperband over settings drawn by sample(); returns the best setting of all brackets at its final budget
+    public Candidate hyperband(int maxGames, int eta, Random rnd) throws InterruptedException {
+        if (eta < 2) throw new IllegalArgumentException("eta must be at least 2 but is " + eta);
+
+        int brackets = (int) (Math.log(maxGames) / Math.log(eta) + 1e-9);
+        Candidate best = null;
+
+        for (int s = brackets; s >= 0; s--) {
+            int count = (int) Math.ceil((brackets + 1.0) / (s + 1) * Math.pow(eta, s));
+            int minGames = Math.max(1, (int) (maxGames / Math.pow(eta, s)));
+
+            System.out.println("bracket " + s + ": " + count + " settings from " + minGames + " games");
+            Candidate winner = successiveHalving(sample(count, rnd), minGames, maxGames, eta).get(0);
+
+            // only settings that played all maxGames games are compared, since they played the same games
+            if (winner.scores.size() == maxGames && (best == null || winner.mean() > best.mean())) best = winner;
+        }
+        return best;
+    }
+
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Play games until every candidate has played the given number, all in parallel
+    private void play(List<Candidate> candidates, int games) throws InterruptedException {
+        ArrayList<Future<Integer>> results = new ArrayList<>();
+        ArrayList<Candidate> owners = new ArrayList<>();
+
+        for (Candidate candidate : candidates) {
+            for (int j = candidate.scores.size(); j < games; j++) {
+                int game = j;
+                results.add(pool.submit(() -> playGame(candidate.constants, game)));
+                owners.add(candidate);
+            }
+        }
+
+        try {
+            // results of a candidate were submitted in game order, so scores stay aligned with the seeds
+            for (int i = 0; i < results.size(); i++) owners.get(i).scores.add(results.get(i).get());
+        } catch (ExecutionException e) {
+            for (Future<Integer> result : results) result.cancel(true);
+            throw new IllegalStateException("A game failed", e.getCause());
+        }
+    }
+
+    // The j-th game, played as in Executor.runExperiment(); returns the score
+    private int playGame(MctsConstants constants, int j) {
+        MonteCarloAgent agent = new MonteCarloAgent(constants);
+        Controller<EnumMap<GHOST, MOVE>> ghosts = ghostFactory.apply(ghostSeeds[j]);
+        Game game = new Game(seeds[j]);
+        game.setReversalSeed(reversalSeeds[j]);
+
+        while (!game.gameOver()) {
+            Game snapshot = game.snapshot();
+            game.advanceGame(agent.computeMove(snapshot, System.currentTimeMillis() + DELAY),
+                    ghosts.computeMove(snapshot, System.currentTimeMillis() + DELAY));
+        }
+        return game.getScore();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int configs = 27, minGames = 1, maxGames = 9, eta = 3;
+        long seed = 0;
+        boolean hyperband = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-configs":
+                    configs = Integer.parseInt(args[++i]);
+                    break;
+                case "-min":
+                    minGames = Integer.parseInt(args[++i]);
+                    break;
+                case "-max":
+                    maxGames = Integer.parseInt(args[++i]);
+                    break;
+                case "-eta":
+                    eta = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-hyperband":
+                    hyperband = true;
+                    break;
+                default:
+                    System.out.println("Usage: MctsSweep [-threads n] [-configs n] [-min games] [-max games] [-eta n] [-seed n] [-hyperband]");
+                    return;
+            }
+        }
+
+        MctsSweep sweep = new MctsSweep(threads, StarterGhosts::new, maxGames, seed);
+        Random rnd = new Random(seed);
+        long start = System.currentTimeMillis();
+
+        try {
+            Candidate best;
+
+            if (hyperband) {
+                best = sweep.hyperband(maxGames, eta, rnd);
+            } else {
+                // the hand-tuned setting competes as well
+                List<MctsConstants> settings = sample(configs - 1, rnd);
+                settings.add(0, MctsConstants.DEFAULT);
+                best = sweep.successiveHalving(settings, minGames, maxGames, eta).get(0);
+            }
+
+            System.out.println("best " + best);
+            System.out.println("took " + (System.currentTimeMillis() - start) / 1000 + " s");
+        } finally {
+            sweep.close();
+        }
+    }
+}
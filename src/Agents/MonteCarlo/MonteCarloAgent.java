@@ -1,5 +1,7 @@
 package Agents.MonteCarlo;
 
+import Agents.SearchAgent;
+import Agents.SearchStats;
 import pacman.controllers.Controller;
 import pacman.controllers.examples.RandomPacMan;
 import pacman.controllers.examples.StarterGhosts;
@@ -8,6 +10,7 @@ import pacman.game.Constants.DM;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.jfr.SearchIterationEvent;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,13 +18,69 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
 
-import static Agents.MonteCarlo.MctsConstants.*;
 
+public class MonteCarloAgent extends Controller<MOVE> implements SearchAgent {
 
-public class MonteCarloAgent extends Controller<MOVE> {
+    // model of the ghosts used to expand the tree; each agent has its own, since controllers keep state
+    public final Controller<EnumMap<Constants.GHOST, Constants.MOVE>> ghosts = new StarterGhosts();
+    // expansions of the current search, limited by TREE_LIMIT
+    public int tree_depth = 0;
 
-    public static Controller<EnumMap<Constants.GHOST, Constants.MOVE>> ghosts = new StarterGhosts();
-    public static int tree_depth = 0;
+    private final MctsConstants constants;
+
+    // search tree plus a spare arena the kept subtree is copied into when re-rooting
+    private Tree tree = new Tree(ghosts);
+    private Tree spare = new Tree(ghosts);
+    // subtree under the move played at the last junction, re-rooted if we arrive where it expects
+    private int nextRoot = Tree.NONE;
+
+    // policies driving pacman and the ghosts during playouts
+    private final PacManRollout pacManRollout;
+    private final GhostRollout ghostRollout;
+
+    // optional early termination of playouts, null to always play SIMULATION_STEPS ticks
+    private final RolloutCutoff cutoff;
+
+    // grow the tree for the next junction between moves (only when run by the worker thread, in the timed modes)
+    public boolean pondering = false;
+
+    // playouts run and ticks simulated by them, for reporting
+    public long rollouts = 0;
+    public long rolloutSteps = 0;
+
+    private final SearchStats stats = new SearchStats();
+
+    public MonteCarloAgent() {
+        this(MctsConstants.DEFAULT);
+    }
+
+    public MonteCarloAgent(MctsConstants constants) {
+        this(new PacManRollout.Uniform(), new GhostRollout.FromController(new StarterGhosts()), null, constants);
+    }
+
+    public MonteCarloAgent(PacManRollout pacManRollout, GhostRollout ghostRollout) {
+        this(pacManRollout, ghostRollout, null);
+    }
+
+    public MonteCarloAgent(PacManRollout pacManRollout, GhostRollout ghostRollout, RolloutCutoff cutoff) {
+        this(pacManRollout, ghostRollout, cutoff, MctsConstants.DEFAULT);
+    }
+
+    public MonteCarloAgent(PacManRollout pacManRollout, GhostRollout ghostRollout, RolloutCutoff cutoff, MctsConstants constants) {
+        this.constants = constants;
+        this.pacManRollout = pacManRollout;
+        this.ghostRollout = ghostRollout;
+        this.cutoff = cutoff;
+    }
+
+    public MctsConstants getConstants() {
+        return constants;
+    }
+
+    @Override
+    public SearchStats getSearchStats() {
+        return stats;
+    }
 
     @Override
     public MOVE getMove(Game game, long timeDue) {
@@ -29,7 +88,8 @@ public class MonteCarloAgent extends Controller<MOVE> {
         //Hunt edible ghosts if not far away
         for (GHOST ghost : GHOST.values()) {
             if (game.getGhostEdibleTime(ghost) > 0) {
-                if (game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost)) < hunt_dist) {
+                if (game.getShortestPathDistance(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost)) < constants.hunt_dist) {
+                    nextRoot = Tree.NONE;
                     return game.getNextMoveTowardsTarget(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(ghost), DM.PATH);
                 }
             }
@@ -38,13 +98,24 @@ public class MonteCarloAgent extends Controller<MOVE> {
         // run Mcts when in a junction to get next move (next move is based on next junction)
         if (pacmanInJunction(game)) {
             tree_depth = 0;
-            return MctsSearch(game);
+            long start = System.nanoTime();
+            MOVE move = MctsSearch(game, timeDue);
+
+            stats.searches++;
+            stats.timeNanos += System.nanoTime() - start;
+            return move;
         }
 
-        // follow path until chosen junction is met.
+        // follow path until chosen junction is met; ponder() searches ahead from it once the move is returned
         return FollowPath(game.getPacmanLastMoveMade(), game);
     }
 
+    @Override
+    protected boolean ponder() {
+        if (pondering && nextRoot != Tree.NONE && tree_depth <= constants.TREE_LIMIT) Ponder(-1);
+        return false;
+    }
+
 
     public MOVE FollowPath(MOVE dir, Game state) {
         int pacman = state.getPacmanCurrentNodeIndex();
@@ -65,7 +136,7 @@ public class MonteCarloAgent extends Controller<MOVE> {
                 int ghostIdx = state.getGhostCurrentNodeIndex(ghost);
                 int ghostDist = state.getShortestPathDistance(pacman, ghostIdx);
 
-                if (ghostDist < ghost_dist) {
+                if (ghostDist < constants.ghost_dist) {
                     MOVE nextAway = state.getNextMoveAwayFromTarget(pacman, ghostIdx, DM.PATH);
 
                     awayMoves.add(nextAway);
@@ -74,9 +145,7 @@ public class MonteCarloAgent extends Controller<MOVE> {
             }
         }
 
-        int moveIdx = ghostsNear.indexOf(Collections.min(ghostsNear));
-
-        if (awayMoves.size() > 0) return awayMoves.get(moveIdx);
+        if (awayMoves.size() > 0) return awayMoves.get(ghostsNear.indexOf(Collections.min(ghostsNear)));
         if (moves.contains(dir)) return dir;
 
         moves.remove(state.getPacmanLastMoveMade().opposite());
@@ -89,81 +158,179 @@ public class MonteCarloAgent extends Controller<MOVE> {
         return game.isJunction(pacman);
     }
 
-    public MOVE MctsSearch(Game game) {
+    public MOVE MctsSearch(Game game, long timeDue) {
 
         //get the current time
         long start = new Date().getTime();
 
-        //create root node with state0
-        Node root = new Node(null, game, game.getPacmanCurrentNodeIndex());
+        //reuse the subtree kept from the last decision, or create root node with state0
+        int root = ReuseRoot(game);
+        nextRoot = Tree.NONE;
+
+        // while we are allowed to keep searching and the move is not due yet
+        for (int iteration = 0; new Date().getTime() < start + constants.SEARCH_TIME_LIMIT && tree_depth <= constants.TREE_LIMIT && !isCancelled(timeDue); iteration++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
 
-        // while we are allowed to keep searching
-        while (new Date().getTime() < start + SEARCH_TIME_LIMIT && tree_depth <= TREE_LIMIT) {
-            Node selected = SelectionPolicy(root);
+            int selected = SelectionPolicy(root);
 
             // if not defined, default move
-            if (selected == null) return MOVE.DOWN;
+            if (selected == Tree.NONE) return MOVE.DOWN;
 
             float reward = SimulationPolicy(selected);
             Backpropagation(selected, reward);
+            CommitIteration(event, game, iteration, root, selected);
+
+            // publish the best move so far, so a search cut short still plays it
+            int best = BestChild(root, 0);
+            if (best != Tree.NONE) publishMove(tree.getMove(best));
         }
 
         // get the best child
-        Node bestChild = BestChild(root, 0);
+        int bestChild = BestChild(root, 0);
 
-        // if we have a best child
-        if (bestChild != null) return bestChild.actionMove;
+        // if we have a best child, keep its subtree for the junction it leads to
+        if (bestChild != Tree.NONE) {
+            nextRoot = bestChild;
+            // pondering on that junction gets its own expansion budget
+            tree_depth = 0;
+            return tree.getMove(bestChild);
+        }
 
         // if we don't
         return new RandomPacMan().getMove(game, -1);
     }
 
 
-    public Node SelectionPolicy(Node nd) {
+    // Commit the flight recorder event of one iteration, if it is enabled
+    private void CommitIteration(SearchIterationEvent event, Game game, int iteration, int root, int selected) {
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        int depth = 0;
+        for (int nd = selected; nd != root && nd != Tree.NONE; nd = tree.parent[nd]) depth++;
+
+        event.controller = getClass().getSimpleName();
+        event.tick = game.getTotalTime();
+        event.iteration = iteration;
+        event.depth = depth;
+        event.nodes = tree.size;
+        event.completed = true;
+        event.commit();
+    }
+
+    // Add a child just created under nd to the statistics: nd counts as expanded when it gets its first child, so
+    // nodes kept from earlier searches are not counted again
+    private void RecordExpansion(int nd, int child) {
+        if (tree.childCount[nd] == 1) stats.nodesExpanded++;
+        stats.childrenGenerated++;
+
+        int depth = 0;
+        for (int n = child; tree.parent[n] != Tree.NONE; n = tree.parent[n]) depth++;
+        stats.reachedDepth(depth);
+    }
+
+    // Run MCTS iterations under the kept subtree until the next game state arrives, so the search at its junction
+    // starts from a tree that has already been grown; ReuseRoot picks it up on arrival
+    public void Ponder(long timeDue) {
+        long start = new Date().getTime();
+
+        for (int iteration = 0; new Date().getTime() < start + constants.SEARCH_TIME_LIMIT && tree_depth <= constants.TREE_LIMIT && !isCancelled(timeDue); iteration++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+
+            int selected = SelectionPolicy(nextRoot);
+            if (selected == Tree.NONE) return;
+
+            float reward = SimulationPolicy(selected);
+            Backpropagation(selected, reward);
+            CommitIteration(event, tree.game[nextRoot], iteration, nextRoot, selected);
+        }
+    }
+
+    // Re-root the kept subtree if pacman reached the junction it was built for and the ghosts behaved as simulated
+    public int ReuseRoot(Game game) {
+        if (nextRoot == Tree.NONE || tree.junction[nextRoot] != game.getPacmanCurrentNodeIndex()
+                || !tree.isConsistentWith(nextRoot, game)) {
+            return tree.reset(game);
+        }
+
+        // move the subtree into the spare arena, then continue from the real state
+        int root = spare.copySubtree(tree, nextRoot);
+        Tree old = tree;
+        tree = spare;
+        spare = old;
+
+        tree.setState(root, game);
+        return root;
+    }
+
+    public int SelectionPolicy(int nd) {
         // check in case
-        if (nd == null) {
-            return null;
+        if (nd == Tree.NONE) {
+            return Tree.NONE;
         }
 
-        while (!nd.isTerminalGameState()) {
-            if (!nd.isFullyExpanded()) return nd.Expand();
-            nd = SelectionPolicy(BestChild(nd, C));
+        while (!tree.isTerminalGameState(nd)) {
+            if (!tree.isFullyExpanded(nd)) {
+                int child = tree.Expand(nd);
+                if (child != nd) {
+                    tree_depth++;
+                    RecordExpansion(nd, child);
+                }
+                return child;
+            }
+            nd = SelectionPolicy(BestChild(nd, constants.C));
 
             // if null end loop
-            if (nd == null) break;
+            if (nd == Tree.NONE) break;
         }
 
         return nd;
     }
 
 
-    public float SimulationPolicy(Node nd) {
+    public float SimulationPolicy(int nd) {
 
         // Check null, no reward
-        if (nd == null) return 0;
+        if (nd == Tree.NONE) return 0;
 
         // If died on the way to the junction
-        if (nd.deltaReward == 0.0f) return 0;
+        if (tree.deltaReward[nd] == 0.0f) return 0;
 
-        int steps = 0;
-        Controller<MOVE> pacManController = new RandomPacMan();
-        Controller<EnumMap<GHOST, MOVE>> ghostController = ghosts;
+        return Rollout(tree.game[nd].copy());
+    }
 
-        Game state = nd.game.copy();
+    // Play the given state forward with the rollout policies and score the outcome
+    public float Rollout(Game state) {
+        int steps = 0;
         int pillsBefore = state.getNumberOfActivePills();
         int livesBefore = state.getPacmanNumberOfLivesRemaining();
+        pacManRollout.reset();
 
         // simulate
         while (!state.gameOver()) {
             //advance game
-            MOVE pacmanMove = pacManController.getMove(state, System.currentTimeMillis());
-            EnumMap<GHOST, MOVE> ghostsMoves = ghostController.getMove(state, System.currentTimeMillis());
+            MOVE pacmanMove = pacManRollout.getMove(state);
+            EnumMap<GHOST, MOVE> ghostsMoves = ghostRollout.getMoves(state);
             state.advanceGame(pacmanMove, ghostsMoves);
             steps++;
 
-            if (steps >= SIMULATION_STEPS) break;
+            if (steps >= constants.SIMULATION_STEPS) break;
+
+            // stop early once the outcome is obvious
+            if (cutoff != null && !state.wasPacManEaten() && cutoff.shouldStop(state, steps, constants.SIMULATION_STEPS, pillsBefore)) {
+                rollouts++;
+                stats.playouts++;
+                rolloutSteps += steps;
+                return cutoff.value();
+            }
         }
 
+        rollouts++;
+        stats.playouts++;
+        rolloutSteps += steps;
+
         // DEATH CONDITION
         int livesAfter = state.getPacmanNumberOfLivesRemaining();
         if (livesAfter < livesBefore) {
@@ -179,32 +346,31 @@ public class MonteCarloAgent extends Controller<MOVE> {
         return 1.0f - ((float) state.getNumberOfActivePills() / ((float) pillsBefore));
     }
 
-    public Node BestChild(Node nd, double C) {
-        Node bestChild = null;
+    public int BestChild(int nd, double C) {
+        int bestChild = Tree.NONE;
         double bestValue = -1.0f;
 
-        for (int i = 0; i < nd.children.size(); i++) {
+        for (int child = tree.firstChild[nd]; child != Tree.NONE; child = tree.nextSibling[child]) {
 
-            Node node = nd.children.get(i);
-            double uctValue = UCTvalue(node, C);
+            double uctValue = UCTvalue(child, C);
 
             if (uctValue >= bestValue) {
                 bestValue = uctValue;
-                bestChild = node;
+                bestChild = child;
             }
         }
         return bestChild;
     }
 
-    private double UCTvalue(Node nd, double C) {
-        return (float) ((nd.deltaReward / nd.timesVisited) + C * Math.sqrt(2 * Math.log(nd.parent.timesVisited) / nd.timesVisited));
+    private double UCTvalue(int nd, double C) {
+        return (float) ((tree.deltaReward[nd] / tree.timesVisited[nd]) + C * Math.sqrt(2 * Math.log(tree.timesVisited[tree.parent[nd]]) / tree.timesVisited[nd]));
     }
 
-    private void Backpropagation(Node currentNode, double reward) {
-        while (currentNode != null) {
-            currentNode.timesVisited++;
-            currentNode.deltaReward += reward;
-            currentNode = currentNode.parent;
+    private void Backpropagation(int currentNode, double reward) {
+        while (currentNode != Tree.NONE) {
+            tree.timesVisited[currentNode]++;
+            tree.deltaReward[currentNode] += reward;
+            currentNode = tree.parent[currentNode];
         }
     }
 }
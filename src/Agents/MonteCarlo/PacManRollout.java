@@ -0,0 +1,112 @@
+package Agents.MonteCarlo;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+import java.util.Random;
+
+
+/**
+ * Pac-Man policy used inside MCTS playouts. Implementations must not allocate per call; each agent owns its
+ * own instances, so they need not be thread safe.
+ */
+public interface PacManRollout {
+
+    MOVE getMove(Game state);
+
+    // Called at the start of every playout, so a policy that keeps state between ticks does not carry it over
+    default void reset() {
+    }
+
+    /**
+     * Uniformly random over all moves, NEUTRAL included (what RandomPacMan does, minus the allocation).
+     */
+    final class Uniform implements PacManRollout {
+        private static final MOVE[] MOVES = MOVE.values();
+        private final Random rnd = new Random();
+
+        @Override
+        public MOVE getMove(Game state) {
+            return MOVES[rnd.nextInt(MOVES.length)];
+        }
+    }
+
+    /**
+     * Uniformly random over the legal moves, never reversing unless it is the only way out.
+     */
+    final class RandomNonReverse implements PacManRollout {
+        private static final MOVE[] MOVES = MOVE.values();
+        private final Random rnd = new Random();
+
+        @Override
+        public MOVE getMove(Game state) {
+            RolloutTables tables = RolloutTables.get(state);
+            int node = state.getPacmanCurrentNodeIndex();
+            int reverse = RolloutTables.reverse(state.getPacmanLastMoveMade());
+
+            int options = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                if (dir != reverse && tables.neighbour(node, dir) != -1) options |= 1 << dir;
+            }
+            if (options == 0) return MOVES[reverse];
+
+            int pick = rnd.nextInt(Integer.bitCount(options));
+            while (pick-- > 0) options &= options - 1;
+            return MOVES[Integer.numberOfTrailingZeros(options)];
+        }
+    }
+
+    /**
+     * Heads for the nearest remaining pill. The target is cached and only searched for again once it has been
+     * eaten or a new playout starts, so most ticks cost four distance lookups.
+     */
+    final class GreedyPill implements PacManRollout {
+        private static final MOVE[] MOVES = MOVE.values();
+        private final RandomNonReverse fallback = new RandomNonReverse();
+        private int targetPill = -1;
+
+        @Override
+        public void reset() {
+            targetPill = -1;
+        }
+
+        @Override
+        public MOVE getMove(Game state) {
+            RolloutTables tables = RolloutTables.get(state);
+            int node = state.getPacmanCurrentNodeIndex();
+            int[] pills = state.getPillIndices();
+
+            if (targetPill < 0 || targetPill >= pills.length || !state.isPillStillAvailable(targetPill)) {
+                targetPill = -1;
+                int best = Integer.MAX_VALUE;
+
+                for (int i = 0; i < pills.length; i++) {
+                    if (state.isPillStillAvailable(i)) {
+                        int distance = state.getShortestPathDistance(node, pills[i]);
+                        if (distance < best) {
+                            best = distance;
+                            targetPill = i;
+                        }
+                    }
+                }
+                if (targetPill < 0) return fallback.getMove(state);
+            }
+
+            int target = pills[targetPill];
+            int bestDir = -1;
+            int best = Integer.MAX_VALUE;
+
+            for (int dir = 0; dir < 4; dir++) {
+                int neighbour = tables.neighbour(node, dir);
+                if (neighbour != -1) {
+                    int distance = state.getShortestPathDistance(neighbour, target);
+                    if (distance < best) {
+                        best = distance;
+                        bestDir = dir;
+                    }
+                }
+            }
+            return bestDir < 0 ? MOVE.NEUTRAL : MOVES[bestDir];
+        }
+    }
+}
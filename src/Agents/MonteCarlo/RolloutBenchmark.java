@@ -0,0 +1,104 @@
+package Agents.MonteCarlo;
+
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.game.Game;
+
+import java.util.ArrayList;
+
+
+/**
+ * Measures MCTS playouts per second and average playout length for every combination of Pac-Man and ghost
+ * rollout policy, with and without the rollout cutoff. Playouts start from states sampled along a StarterPacMan
+ * vs StarterGhosts game, so all policies see the same positions.
+ *
+ * Usage: RolloutBenchmark [millisPerPolicy] [cutoffThreshold]
+ */
+public class RolloutBenchmark {
+
+    private static final int SAMPLE_EVERY = 25;
+
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        double threshold = args.length > 1 ? Double.parseDouble(args[1]) : MctsConstants.CUTOFF_THRESHOLD;
+        ArrayList<Game> samples = sampleStates();
+
+        String[] pacManNames = {"Uniform", "RandomNonReverse", "GreedyPill"};
+        String[] ghostNames = {"StarterGhosts", "Chase", "Flee", "Scatter"};
+
+        System.out.println(samples.size() + " sample states, " + millis + " ms per combination");
+        System.out.println("cutoff threshold " + threshold);
+        System.out.println("pacman\tghosts\tcutoff\tplayouts/s\tavg length");
+
+        for (String pacManName : pacManNames) {
+            for (String ghostName : ghostNames) {
+                for (boolean withCutoff : new boolean[]{false, true}) {
+                    MonteCarloAgent agent = new MonteCarloAgent(pacManPolicy(pacManName), ghostPolicy(ghostName),
+                            withCutoff ? new RolloutCutoff(threshold) : null);
+
+                    // warm up so the JIT has compiled the playout loop before timing
+                    run(agent, samples, millis / 4);
+                    agent.rollouts = agent.rolloutSteps = 0;
+
+                    double playoutsPerSecond = run(agent, samples, millis);
+                    System.out.printf("%s\t%s\t%s\t%.0f\t%.1f%n", pacManName, ghostName, withCutoff ? "on" : "off",
+                            playoutsPerSecond, (double) agent.rolloutSteps / agent.rollouts);
+                }
+            }
+        }
+    }
+
+    public static PacManRollout pacManPolicy(String name) {
+        switch (name) {
+            case "RandomNonReverse":
+                return new PacManRollout.RandomNonReverse();
+            case "GreedyPill":
+                return new PacManRollout.GreedyPill();
+            default:
+                return new PacManRollout.Uniform();
+        }
+    }
+
+    public static GhostRollout ghostPolicy(String name) {
+        switch (name) {
+            case "Chase":
+                return new GhostRollout.Chase();
+            case "Flee":
+                return new GhostRollout.Flee();
+            case "Scatter":
+                return new GhostRollout.Scatter();
+            default:
+                return new GhostRollout.FromController(new StarterGhosts());
+        }
+    }
+
+    // Run playouts round-robin over the samples for the given time; returns playouts per second
+    private static double run(MonteCarloAgent agent, ArrayList<Game> samples, long millis) {
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000L;
+        long playouts = 0;
+
+        while (System.nanoTime() < end) {
+            agent.Rollout(samples.get((int) (playouts % samples.size())).copy());
+            playouts++;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return playouts / seconds;
+    }
+
+    public static ArrayList<Game> sampleStates() {
+        ArrayList<Game> samples = new ArrayList<>();
+        Game game = new Game(0);
+        StarterPacMan pacMan = new StarterPacMan();
+        StarterGhosts ghosts = new StarterGhosts();
+
+        while (!game.gameOver()) {
+            if (game.getTotalTime() % SAMPLE_EVERY == 0) {
+                samples.add(game.copy());
+            }
+            game.advanceGame(pacMan.getMove(game.copy(), -1), ghosts.getMove(game.copy(), -1));
+        }
+        return samples;
+    }
+}
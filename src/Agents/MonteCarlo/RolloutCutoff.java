@@ -0,0 +1,110 @@
+package Agents.MonteCarlo;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Game;
+
+import static pacman.game.Constants.EAT_DISTANCE;
+
+
+/**
+ * Cheap static evaluator that lets a playout stop early once its outcome is obvious. Each tick it rates how
+ * sure it is that Pac-Man is either trapped (every exit is within reach of a hostile ghost) or safe for the
+ * rest of the playout (every ghost that could hurt it is far away). When that confidence reaches the
+ * threshold, the rollout ends and value() is used as its reward.
+ */
+public class RolloutCutoff {
+
+    // do not judge a playout before it has run this many ticks (the pill extrapolation needs a few)
+    public static final int MIN_STEPS = 10;
+    // a hostile ghost this far away (in path steps) makes Pac-Man fully safe
+    public static final int SAFE_DISTANCE = 50;
+
+    private static final GHOST[] GHOSTS = GHOST.values();
+
+    private final double threshold;
+    private float value;
+
+    public RolloutCutoff(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    // Reward to use for the rollout after shouldStop() returned true
+    public float value() {
+        return value;
+    }
+
+    /**
+     * @param state the playout state after the given number of steps
+     * @param steps ticks played so far
+     * @param totalSteps ticks the playout would run without a cutoff
+     * @param pillsBefore active pills when the playout started
+     * @return whether the playout can stop here
+     */
+    public boolean shouldStop(Game state, int steps, int totalSteps, int pillsBefore) {
+        if (steps < MIN_STEPS) return false;
+
+        int pacman = state.getPacmanCurrentNodeIndex();
+        int remaining = totalSteps - steps;
+
+        if (trappedConfidence(state, pacman) >= threshold) {
+            value = 0.0f;
+            return true;
+        }
+
+        if (safeConfidence(state, pacman, remaining) >= threshold) {
+            // extrapolate the pill progress so far over the whole playout
+            float progress = 1.0f - ((float) state.getNumberOfActivePills() / ((float) pillsBefore));
+            value = Math.min(1.0f, progress * totalSteps / steps);
+            return true;
+        }
+
+        return false;
+    }
+
+    // Fraction of Pac-Man's exits that a hostile ghost reaches no later than Pac-Man does
+    private double trappedConfidence(Game state, int pacman) {
+        int[] exits = state.getNeighbouringNodes(pacman);
+        if (exits.length == 0) return 0;
+
+        int covered = 0;
+        for (int exit : exits) {
+            for (GHOST ghost : GHOSTS) {
+                if (isHostile(state, ghost)
+                        && state.getShortestPathDistance(state.getGhostCurrentNodeIndex(ghost), exit) <= EAT_DISTANCE) {
+                    covered++;
+                    break;
+                }
+            }
+        }
+        return (double) covered / exits.length;
+    }
+
+    // 1 when no ghost that can hurt pacman before the playout ends is within SAFE_DISTANCE, falling off linearly
+    private double safeConfidence(Game state, int pacman, int remaining) {
+        int nearest = Integer.MAX_VALUE;
+
+        for (GHOST ghost : GHOSTS) {
+            if (state.getGhostEdibleTime(ghost) > remaining) continue;
+
+            int distance;
+            int lairTime = state.getGhostLairTime(ghost);
+            if (lairTime > 0) {
+                if (lairTime > remaining) continue;
+                distance = lairTime + state.getShortestPathDistance(state.getGhostInitialNodeIndex(), pacman);
+            } else {
+                distance = state.getShortestPathDistance(state.getGhostCurrentNodeIndex(ghost), pacman);
+            }
+            nearest = Math.min(nearest, distance);
+        }
+
+        return Math.min(1.0, (double) nearest / SAFE_DISTANCE);
+    }
+
+    private static boolean isHostile(Game state, GHOST ghost) {
+        return state.getGhostEdibleTime(ghost) == 0 && state.getGhostLairTime(ghost) == 0;
+    }
+}
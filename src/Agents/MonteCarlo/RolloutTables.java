@@ -0,0 +1,68 @@
+package Agents.MonteCarlo;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.internal.Maze;
+
+import static pacman.game.Constants.NUM_MAZES;
+
+/**
+ * Per-maze lookup tables for the rollout policies. The engine keeps neighbours in EnumMaps; here they are
+ * flattened to int arrays indexed by node*4+MOVE.ordinal() (-1 where there is no neighbour), so a playout
+ * tick only does array reads. Tables are built once per maze on first use.
+ */
+public final class RolloutTables {
+
+    private static final RolloutTables[] tables = new RolloutTables[NUM_MAZES];
+
+    public final int[] neighbours;
+    public final int[] powerPillIndices;
+
+    private RolloutTables(Maze maze) {
+        neighbours = new int[maze.graph.length * 4];
+        MOVE[] moves = MOVE.values();
+
+        for (int node = 0; node < maze.graph.length; node++) {
+            for (int dir = 0; dir < 4; dir++) {
+                Integer neighbour = maze.graph[node].neighbourhood.get(moves[dir]);
+                neighbours[node * 4 + dir] = neighbour == null ? -1 : neighbour;
+            }
+        }
+
+        powerPillIndices = maze.powerPillIndices;
+    }
+
+    public static RolloutTables get(Game game) {
+        int index = game.getMazeIndex();
+        RolloutTables table = tables[index];
+
+        if (table == null) {
+            synchronized (tables) {
+                if (tables[index] == null) {
+                    tables[index] = new RolloutTables(game.getCurrentMaze());
+                }
+                table = tables[index];
+            }
+        }
+        return table;
+    }
+
+    public int neighbour(int node, int dir) {
+        return neighbours[node * 4 + dir];
+    }
+
+    // Ordinal of the reverse of a move (-1 for NEUTRAL): UP<->DOWN, RIGHT<->LEFT
+    public static int reverse(MOVE move) {
+        return move == MOVE.NEUTRAL ? -1 : (move.ordinal() + 2) & 3;
+    }
+
+    // Whether pacman is within the given distance of a power pill that is still available
+    public boolean closeToPower(Game game, int pacman, int proximity) {
+        for (int i = 0; i < powerPillIndices.length; i++) {
+            if (game.isPowerPillStillAvailable(i) && game.getShortestPathDistance(powerPillIndices[i], pacman) < proximity) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,326 @@
+package Agents.MonteCarlo;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Random;
+
+
+/**
+ * Array-backed MCTS tree. Nodes are plain int indices into parallel primitive arrays, so growing the tree
+ * allocates nothing but the game state of the new junction. Tried and possible moves are kept as bitmasks
+ * over MOVE ordinals. The arrays are reused from one search to the next and only grow when the tree does.
+ */
+public class Tree {
+
+    public static final int NONE = -1;
+    private static final MOVE[] MOVES = MOVE.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    public int size = 0;
+    public int[] timesVisited;
+    public double[] deltaReward;
+    public int[] parent;
+    public int[] firstChild;
+    public int[] nextSibling;
+    public int[] childCount;
+    public int[] junction;
+    public byte[] actionMove;
+    public byte[] possibleMoves;
+    public byte[] triedMoves;
+    public boolean[] terminal;
+    // transitions use stochastic ghosts, so a node's state cannot be replayed from its moves and is kept by reference
+    public Game[] game;
+
+    private final Random rnd = new Random();
+
+    // the ghosts moving during transitions from junction to junction
+    private final Controller<EnumMap<GHOST, MOVE>> ghosts;
+
+    // scratch buffers for copySubtree
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] remap = new int[INITIAL_CAPACITY];
+
+    public Tree(Controller<EnumMap<GHOST, MOVE>> ghosts) {
+        this.ghosts = ghosts;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        timesVisited = new int[capacity];
+        deltaReward = new double[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        childCount = new int[capacity];
+        junction = new int[capacity];
+        actionMove = new byte[capacity];
+        possibleMoves = new byte[capacity];
+        triedMoves = new byte[capacity];
+        terminal = new boolean[capacity];
+        game = new Game[capacity];
+    }
+
+    private void grow() {
+        int capacity = timesVisited.length * 2;
+        timesVisited = Arrays.copyOf(timesVisited, capacity);
+        deltaReward = Arrays.copyOf(deltaReward, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+        junction = Arrays.copyOf(junction, capacity);
+        actionMove = Arrays.copyOf(actionMove, capacity);
+        possibleMoves = Arrays.copyOf(possibleMoves, capacity);
+        triedMoves = Arrays.copyOf(triedMoves, capacity);
+        terminal = Arrays.copyOf(terminal, capacity);
+        game = Arrays.copyOf(game, capacity);
+    }
+
+    // Drop all nodes and start a new tree whose root is the given state
+    public int reset(Game state) {
+        clear();
+        return add(NONE, state, state.getPacmanCurrentNodeIndex(), MOVE.UP, -1.0f);
+    }
+
+    // Append a node as the last child of parent (or as a root when parent is NONE)
+    public int add(int parentNode, Game state, int junctionIndex, MOVE move, double reward) {
+        if (size == timesVisited.length) grow();
+
+        int nd = size++;
+        timesVisited[nd] = 0;
+        deltaReward[nd] = reward;
+        parent[nd] = parentNode;
+        firstChild[nd] = NONE;
+        nextSibling[nd] = NONE;
+        childCount[nd] = 0;
+        junction[nd] = junctionIndex;
+        actionMove[nd] = (byte) move.ordinal();
+        triedMoves[nd] = 0;
+        setState(nd, state);
+
+        if (parentNode != NONE) {
+            int last = firstChild[parentNode];
+            if (last == NONE) {
+                firstChild[parentNode] = nd;
+            } else {
+                while (nextSibling[last] != NONE) last = nextSibling[last];
+                nextSibling[last] = nd;
+            }
+            childCount[parentNode]++;
+        }
+        return nd;
+    }
+
+    // Attach a (new) state to a node and cache everything the tree needs from it
+    public void setState(int nd, Game state) {
+        game[nd] = state;
+        terminal[nd] = state.wasPacManEaten() || state.getNumberOfActivePills() == 0;
+
+        int mask = 0;
+        for (MOVE move : state.getPossibleMoves(state.getPacmanCurrentNodeIndex())) {
+            mask |= 1 << move.ordinal();
+        }
+        possibleMoves[nd] = (byte) mask;
+    }
+
+    public MOVE getMove(int nd) {
+        return MOVES[actionMove[nd]];
+    }
+
+    /**
+     * Replace this tree by a copy of the subtree under nd in another tree, numbered in breadth-first order.
+     * The agent keeps two trees and swaps them, so re-rooting allocates nothing.
+     *
+     * @return the index of the new root (always 0)
+     */
+    public int copySubtree(Tree from, int nd) {
+        clear();
+
+        if (order.length < from.size) {
+            order = new int[from.timesVisited.length];
+            remap = new int[from.timesVisited.length];
+        }
+
+        int count = 0;
+        order[count++] = nd;
+        for (int i = 0; i < count; i++) {
+            for (int c = from.firstChild[order[i]]; c != NONE; c = from.nextSibling[c]) {
+                order[count++] = c;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            remap[order[i]] = i;
+        }
+
+        while (timesVisited.length < count) grow();
+
+        for (int i = 0; i < count; i++) {
+            int src = order[i];
+            timesVisited[i] = from.timesVisited[src];
+            deltaReward[i] = from.deltaReward[src];
+            parent[i] = i == 0 ? NONE : remap[from.parent[src]];
+            firstChild[i] = from.firstChild[src] == NONE ? NONE : remap[from.firstChild[src]];
+            nextSibling[i] = i == 0 || from.nextSibling[src] == NONE ? NONE : remap[from.nextSibling[src]];
+            childCount[i] = from.childCount[src];
+            junction[i] = from.junction[src];
+            actionMove[i] = from.actionMove[src];
+            possibleMoves[i] = from.possibleMoves[src];
+            triedMoves[i] = from.triedMoves[src];
+            terminal[i] = from.terminal[src];
+            game[i] = from.game[src];
+        }
+
+        size = count;
+        from.clear();
+        return 0;
+    }
+
+    // Release all nodes (and the game states they hold)
+    public void clear() {
+        Arrays.fill(game, 0, size, null);
+        size = 0;
+    }
+
+    public static int averageGhostDistance(Game state) {
+        int pacman = state.getPacmanCurrentNodeIndex();
+        double sum = 0;
+
+        for (GHOST ghost : GHOST.values()) {
+            sum += state.getDistance(pacman, state.getGhostCurrentNodeIndex(ghost), DM.PATH);
+        }
+
+        return (int) (sum / 4);
+    }
+
+    public int Expand(int nd) {
+
+        MOVE next = untriedMove(nd);
+        Game state = game[nd];
+
+        if (next == state.getPacmanLastMoveMade().opposite()) return nd;
+        return GetClosestJunctionInDir(nd, next);
+    }
+
+    public int GetClosestJunctionInDir(int nd, MOVE dir) {
+
+        Game state = game[nd].copy();
+        Controller<EnumMap<GHOST, MOVE>> ghostController = ghosts;
+
+        int from = state.getPacmanCurrentNodeIndex();
+        int current = from;
+        MOVE currentPacmanDir = dir;
+
+        //Simulation reward variables
+        int pillsBefore = state.getNumberOfActivePills();
+        int capsulesBefore = state.getNumberOfActivePowerPills();
+        int livesBefore = state.getPacmanNumberOfLivesRemaining();
+        float transition_reward;
+
+        // use current == from , so we skip the junction we are currently in
+        while (!state.isJunction(current) || current == from) {
+
+            //make pacman follow the path
+            currentPacmanDir = GetMoveToFollowPath(state, currentPacmanDir);
+
+            //advance game state
+            state.advanceGame(currentPacmanDir,
+                    ghostController.getMove(state,
+                            System.currentTimeMillis()));
+
+            current = state.getPacmanCurrentNodeIndex();
+        }
+
+        int livesAfter = state.getPacmanNumberOfLivesRemaining();
+        int pillsAfter = state.getNumberOfActivePills();
+        int capsulesAfter = state.getNumberOfActivePowerPills();
+
+        //dead during transition
+        if (livesAfter < livesBefore) {
+            transition_reward = 0.0f;
+        } else if (capsulesAfter < capsulesBefore && averageGhostDistance(state) > 100) {
+            transition_reward = 0.0f;
+        }
+        //alive but no pills eaten
+        else if (pillsAfter == pillsBefore) {
+            transition_reward = 0.2f;
+        }
+        //pills eaten and alive
+        else {
+            transition_reward = 1.0f;
+        }
+
+        //add the child node with updated state and junction number
+        return add(nd, state, current, dir, transition_reward);
+    }
+
+    // Make pacman follow a path where only one move is possible (excluding reverse)
+    public static MOVE GetMoveToFollowPath(Game state, MOVE direction) {
+        MOVE[] possibleMoves = state.getPossibleMoves(state.getPacmanCurrentNodeIndex());
+        MOVE reverse = state.getPacmanLastMoveMade().opposite();
+        MOVE other = null;
+
+        for (MOVE move : possibleMoves) {
+            if (move == direction) return direction;
+            if (other == null && move != reverse) other = move;
+        }
+        // along a path there is only one possible way remaining
+        return other;
+    }
+
+    // Whether the real game still matches the state this node was simulated to, so its statistics stay valid
+    public boolean isConsistentWith(int nd, Game state) {
+        Game stored = game[nd];
+
+        if (state.getPacmanNumberOfLivesRemaining() != stored.getPacmanNumberOfLivesRemaining()
+                || state.getNumberOfActivePills() != stored.getNumberOfActivePills()
+                || state.getNumberOfActivePowerPills() != stored.getNumberOfActivePowerPills()
+                || state.getMazeIndex() != stored.getMazeIndex()) {
+            return false;
+        }
+
+        for (GHOST ghost : GHOST.values()) {
+            if (state.isGhostEdible(ghost) != stored.isGhostEdible(ghost)
+                    || (state.getGhostLairTime(ghost) > 0) != (stored.getGhostLairTime(ghost) > 0)) {
+                return false;
+            }
+
+            if (state.getGhostLairTime(ghost) == 0 && state.getShortestPathDistance(
+                    state.getGhostCurrentNodeIndex(ghost),
+                    stored.getGhostCurrentNodeIndex(ghost)) > MctsConstants.REUSE_GHOST_TOLERANCE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isTerminalGameState(int nd) {
+        return terminal[nd];
+    }
+
+    //Pick randomly non-tried action
+    public MOVE untriedMove(int nd) {
+        int untried = possibleMoves[nd] & ~triedMoves[nd];
+        int pick = rnd.nextInt(Integer.bitCount(untried));
+
+        while (pick-- > 0) untried &= untried - 1;
+        int ordinal = Integer.numberOfTrailingZeros(untried);
+
+        triedMoves[nd] |= 1 << ordinal;
+        return MOVES[ordinal];
+    }
+
+    public boolean isFullyExpanded(int nd) {
+        if (childCount[nd] == 0) {
+            return false;
+        }
+
+        return Integer.bitCount(possibleMoves[nd]) == childCount[nd] || possibleMoves[nd] == triedMoves[nd];
+    }
+}
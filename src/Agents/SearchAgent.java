@@ -0,0 +1,11 @@
+package Agents;
+
+
+/**
+ * An agent that searches for its moves and keeps SearchStats about it. The statistics accumulate over all moves
+ * until someone (normally the executor at the end of a game) resets them.
+ */
+public interface SearchAgent {
+
+    SearchStats getSearchStats();
+}
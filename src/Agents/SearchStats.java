@@ -0,0 +1,65 @@
+package Agents;
+
+import java.util.Locale;
+
+
+/**
+ * Counters describing the work a search agent did. Agents add to them on every move; the executor prints the
+ * totals at the end of a game and resets them.
+ */
+public class SearchStats {
+
+    // moves decided by a search, and the time those searches took
+    public long searches = 0;
+    public long timeNanos = 0;
+
+    // nodes whose successors were generated, and how many successors that gave
+    public long nodesExpanded = 0;
+    public long childrenGenerated = 0;
+
+    // alpha-beta cutoffs, transposition table hits (0 until an agent has a transposition table) and MCTS playouts
+    public long cutoffs = 0;
+    public long transpositionHits = 0;
+    public long playouts = 0;
+
+    // deepest level reached: completed minimax depth (every agent moves once per level), or MCTS tree depth
+    public int maxDepth = 0;
+
+    public void expanded(int children) {
+        nodesExpanded++;
+        childrenGenerated += children;
+    }
+
+    public void reachedDepth(int depth) {
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    public double branchingFactor() {
+        return nodesExpanded == 0 ? 0 : (double) childrenGenerated / nodesExpanded;
+    }
+
+    public void add(SearchStats other) {
+        searches += other.searches;
+        timeNanos += other.timeNanos;
+        nodesExpanded += other.nodesExpanded;
+        childrenGenerated += other.childrenGenerated;
+        cutoffs += other.cutoffs;
+        transpositionHits += other.transpositionHits;
+        playouts += other.playouts;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+    }
+
+    public void reset() {
+        searches = timeNanos = nodesExpanded = childrenGenerated = cutoffs = transpositionHits = playouts = 0;
+        maxDepth = 0;
+    }
+
+    public String report(String name) {
+        double perSearch = Math.max(1, searches);
+        return String.format(Locale.ROOT,
+                "%s: %d searches, %.1f nodes/search, %d cutoffs, %d transposition hits, %d playouts, "
+                        + "max depth %d, branching %.2f, %.3f ms/search",
+                name, searches, nodesExpanded / perSearch, cutoffs, transpositionHits, playouts,
+                maxDepth, branchingFactor(), timeNanos / perSearch / 1e6);
+    }
+}
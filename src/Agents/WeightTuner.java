@@ -0,0 +1,349 @@
+package Agents;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import static pacman.game.Constants.DELAY;
+
+
+/**
+ * Tunes the weight vector of an agent (HeuristicAgent, or the evaluation of MinimaxAgent and AlphaBetaAgent) with
+ * the cross-entropy method: each generation draws a population of vectors from a normal distribution per weight,
+ * plays the same fixed set of games with each, and moves the distribution to the mean and spread of the best
+ * ones. All games of a generation run in parallel on a pool of threads, each with its own agent and ghost
+ * controller, and are played as in Executor.runExperiment(). Every vector plays the same games: each game has
+ * its own game, ghost and reversal seeds, as in Executor.runPairedExperiment(), so the ghosts and the global
+ * reversals make the same random choices for every vector.
+ *
+ * After every generation the state (distribution, population with its scores and the best vector so far) is
+ * written to a checkpoint file, replacing the previous one; a tuner started with an existing checkpoint continues
+ * from it. The population of a generation is drawn from a generator seeded with the seed and the generation, so
+ * a resumed run draws what the interrupted one would have.
+ *
+ * Usage: WeightTuner heuristic|minimax|alphabeta checkpoint [-generations n] [-population n] [-elite n]
+ * [-games n] [-threads n] [-seed n] [-depth n]
+ */
+public class WeightTuner {
+
+    // how much of the new distribution comes from the elite, and the smallest spread, relative to the start
+    private static final double SMOOTHING = 0.7;
+    private static final double MIN_SPREAD = 0.02;
+
+    private final Function<double[], Controller<MOVE>> agentFactory;
+    private final LongFunction<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory;
+    private final ExecutorService pool;
+    private final long[] gameSeeds, ghostSeeds, reversalSeeds;
+    private final long seed;
+
+    // the distribution, the initial spread and the best vector found
+    private double[] mean, spread;
+    private final double[] initialSpread;
+    private double[] best;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+    private int generation;
+
+    // the last population and the average scores of its vectors
+    private double[][] population = new double[0][];
+    private double[] scores = new double[0];
+
+    public WeightTuner(double[] initial, Function<double[], Controller<MOVE>> agentFactory,
+                       LongFunction<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory, int threads, int games, long seed) {
+        this.agentFactory = agentFactory;
+        this.ghostFactory = ghostFactory;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.seed = seed;
+        this.mean = initial.clone();
+        this.best = initial.clone();
+        this.spread = new double[initial.length];
+
+        // start wide enough to flip small weights and to move large ones by half
+        for (int i = 0; i < initial.length; i++) spread[i] = Math.max(1, Math.abs(initial[i]) / 2);
+        this.initialSpread = spread.clone();
+
+        // the games every vector is judged on, drawn as in runPairedExperiment
+        this.gameSeeds = new long[games];
+        this.ghostSeeds = new long[games];
+        this.reversalSeeds = new long[games];
+        Random rnd = new Random(seed);
+        for (int i = 0; i < games; i++) {
+            gameSeeds[i] = rnd.nextLong();
+            ghostSeeds[i] = rnd.nextLong();
+            reversalSeeds[i] = rnd.nextLong();
+        }
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public double[] getBest() {
+        return best.clone();
+    }
+
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    // Draw, evaluate and select one generation
+    public void step(int populationSize, int eliteSize) throws InterruptedException {
+        Random rnd = new Random(seed * 31 + generation);
+        population = new double[populationSize][];
+
+        for (int k = 0; k < populationSize; k++) {
+            population[k] = new double[mean.length];
+            for (int i = 0; i < mean.length; i++) population[k][i] = mean[i] + spread[i] * rnd.nextGaussian();
+        }
+
+        // the current mean is always part of the population, so the best vector never gets lost
+        population[0] = mean.clone();
+        scores = evaluate(population);
+
+        Integer[] order = new Integer[populationSize];
+        for (int k = 0; k < populationSize; k++) order[k] = k;
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        if (scores[order[0]] > bestScore) {
+            bestScore = scores[order[0]];
+            best = population[order[0]].clone();
+        }
+
+        for (int i = 0; i < mean.length; i++) {
+            double m = 0, v = 0;
+            for (int e = 0; e < eliteSize; e++) m += population[order[e]][i];
+            m /= eliteSize;
+            for (int e = 0; e < eliteSize; e++) v += Math.pow(population[order[e]][i] - m, 2);
+
+            mean[i] = SMOOTHING * m + (1 - SMOOTHING) * mean[i];
+            spread[i] = Math.max(MIN_SPREAD * initialSpread[i], SMOOTHING * Math.sqrt(v / eliteSize) + (1 - SMOOTHING) * spread[i]);
+        }
+
+        generation++;
+    }
+
+    // Average score of each vector over the fixed games, all games in parallel
+    private double[] evaluate(double[][] vectors) throws InterruptedException {
+        ArrayList<Future<Integer>> results = new ArrayList<>();
+
+        for (double[] weights : vectors) {
+            for (int j = 0; j < gameSeeds.length; j++) {
+                int game = j;
+                results.add(pool.submit(() -> playGame(weights, game)));
+            }
+        }
+
+        double[] averages = new double[vectors.length];
+
+        try {
+            for (int i = 0; i < results.size(); i++) averages[i / gameSeeds.length] += results.get(i).get();
+        } catch (ExecutionException e) {
+            for (Future<Integer> result : results) result.cancel(true);
+            throw new IllegalStateException("A game failed", e.getCause());
+        }
+
+        for (int k = 0; k < vectors.length; k++) averages[k] /= gameSeeds.length;
+        return averages;
+    }
+
+    // The j-th game, played as in Executor.runExperiment(); returns the score
+    private int playGame(double[] weights, int j) {
+        Controller<MOVE> agent = agentFactory.apply(weights);
+        Controller<EnumMap<GHOST, MOVE>> ghosts = ghostFactory.apply(ghostSeeds[j]);
+        Game game = new Game(gameSeeds[j]);
+        game.setReversalSeed(reversalSeeds[j]);
+
+        while (!game.gameOver()) {
+            Game snapshot = game.snapshot();
+            game.advanceGame(agent.computeMove(snapshot, System.currentTimeMillis() + DELAY),
+                    ghosts.computeMove(snapshot, System.currentTimeMillis() + DELAY));
+        }
+        return game.getScore();
+    }
+
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Write the state to a temporary file first and then rename it, so a crash never leaves a partial checkpoint
+    public void save(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        try (PrintWriter out = new PrintWriter(temporary)) {
+            out.println("generation " + generation);
+            out.println("mean " + join(mean));
+            out.println("spread " + join(spread));
+            out.println("initialSpread " + join(initialSpread));
+            out.println("best " + bestScore + " " + join(best));
+
+            for (int k = 0; k < population.length; k++) out.println("candidate " + scores[k] + " " + join(population[k]));
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void load(File file) throws IOException {
+        ArrayList<double[]> candidates = new ArrayList<>();
+        ArrayList<Double> candidateScores = new ArrayList<>();
+
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.trim().split(" ");
+
+                switch (fields[0]) {
+                    case "generation":
+                        generation = Integer.parseInt(fields[1]);
+                        break;
+                    case "mean":
+                        mean = parse(fields, 1);
+                        break;
+                    case "spread":
+                        spread = parse(fields, 1);
+                        break;
+                    case "initialSpread":
+                        System.arraycopy(parse(fields, 1), 0, initialSpread, 0, initialSpread.length);
+                        break;
+                    case "best":
+                        bestScore = Double.parseDouble(fields[1]);
+                        best = parse(fields, 2);
+                        break;
+                    case "candidate":
+                        candidateScores.add(Double.parseDouble(fields[1]));
+                        candidates.add(parse(fields, 2));
+                        break;
+                    default:
+                        throw new IOException("Unexpected line in checkpoint: " + line);
+                }
+            }
+        }
+
+        if (mean.length != initialSpread.length || spread.length != mean.length || best.length != mean.length)
+            throw new IOException("The checkpoint is for " + mean.length + " weights, not " + initialSpread.length);
+
+        population = candidates.toArray(new double[0][]);
+        scores = new double[candidateScores.size()];
+        for (int k = 0; k < scores.length; k++) scores[k] = candidateScores.get(k);
+    }
+
+    private static String join(double[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (double value : values) sb.append(sb.length() > 0 ? " " : "").append(value);
+        return sb.toString();
+    }
+
+    private static double[] parse(String[] fields, int from) {
+        double[] values = new double[fields.length - from];
+        for (int i = 0; i < values.length; i++) values[i] = Double.parseDouble(fields[from + i]);
+        return values;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: WeightTuner heuristic|minimax|alphabeta checkpoint [-generations n] [-population n] [-elite n] [-games n] [-threads n] [-seed n] [-depth n]");
+            return;
+        }
+
+        int generations = 20, populationSize = 16, eliteSize = 4, games = 8, depth = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "-generations":
+                    generations = value;
+                    break;
+                case "-population":
+                    populationSize = value;
+                    break;
+                case "-elite":
+                    eliteSize = value;
+                    break;
+                case "-games":
+                    games = value;
+                    break;
+                case "-threads":
+                    threads = value;
+                    break;
+                case "-seed":
+                    seed = value;
+                    break;
+                case "-depth":
+                    depth = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        double[] initial;
+        String[] names;
+        Function<double[], Controller<MOVE>> agentFactory;
+        int searchDepth = depth;
+
+        switch (args[0]) {
+            case "heuristic":
+                initial = HeuristicAgent.DEFAULT_WEIGHTS;
+                names = HeuristicAgent.WEIGHT_NAMES;
+                agentFactory = HeuristicAgent::new;
+                break;
+            case "minimax":
+                initial = MinimaxAgent.DEFAULT_WEIGHTS;
+                names = MinimaxAgent.WEIGHT_NAMES;
+                agentFactory = weights -> new MinimaxAgent(searchDepth, weights);
+                break;
+            case "alphabeta":
+                initial = MinimaxAgent.DEFAULT_WEIGHTS;
+                names = MinimaxAgent.WEIGHT_NAMES;
+                agentFactory = weights -> new AlphaBetaAgent(searchDepth, weights);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown agent " + args[0]);
+        }
+
+        File checkpoint = new File(args[1]);
+        WeightTuner tuner = new WeightTuner(initial, agentFactory, StarterGhosts::new, threads, games, seed);
+
+        if (checkpoint.exists()) {
+            tuner.load(checkpoint);
+            System.out.println("resuming at generation " + tuner.getGeneration());
+        }
+
+        try {
+            while (tuner.getGeneration() < generations) {
+                long start = System.currentTimeMillis();
+                tuner.step(populationSize, eliteSize);
+                tuner.save(checkpoint);
+
+                System.out.printf(Locale.ROOT, "generation %d: best %.1f, mean of population %.1f, %d s%n", tuner.getGeneration(),
+                        tuner.getBestScore(), Arrays.stream(tuner.scores).average().orElse(0),
+                        (System.currentTimeMillis() - start) / 1000);
+            }
+        } finally {
+            tuner.close();
+        }
+
+        double[] best = tuner.getBest();
+        for (int i = 0; i < names.length; i++) System.out.println(names[i] + "\t" + best[i]);
+    }
+}
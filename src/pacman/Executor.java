@@ -1,6 +1,7 @@
 package pacman;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -9,18 +10,27 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Random;
+import java.util.function.LongFunction;
 
 import Agents.AlphaBetaAgent;
 import Agents.MinimaxAgent;
+import Agents.SearchAgent;
+import Agents.SearchStats;
 import Agents.MonteCarlo.MonteCarloAgent;
 import pacman.controllers.Controller;
+import pacman.controllers.ControllerStats;
 import pacman.controllers.HumanController;
+import pacman.controllers.TickScheduler;
 import pacman.controllers.examples.AggressiveGhosts;
 import pacman.controllers.examples.Legacy2TheReckoning;
 import pacman.controllers.examples.RandomGhosts;
 import pacman.controllers.examples.StarterGhosts;
 import pacman.game.Game;
 import pacman.game.GameView;
+import pacman.game.util.PairedComparison;
+import pacman.game.util.ReplayReader;
+import pacman.game.util.ReplayWriter;
+import pacman.jfr.TickEvent;
 import static pacman.game.Constants.*;
 import Agents.HeuristicAgent;
 
@@ -33,6 +43,8 @@ import Agents.HeuristicAgent;
 @SuppressWarnings("unused")
 public class Executor
 {	
+	private String statsFile;	//CSV file the controller statistics are appended to at the end of each run, if any
+	
 	/**
 	 * The main method. Several options are listed - simply remove comments to use the option you want.
 	 *
@@ -55,47 +67,53 @@ public class Executor
 		// RandomGhosts, StarterGhosts, AggressiveGhosts, Legacy2TheReckoning
 		String ghostType = "AggressiveGhosts";
 
+		// To compare the agent with another one on the same games (without visuals), choose the other agent:
+		// null, MonteCarloAgent, HeuristicAgent, MinimaxAgent, AlphaBetaAgent
+		String baselineName = null;
+
 		// Do not change code below
 		Executor exec=new Executor();
-		Controller<MOVE> agent;
+		Controller<MOVE> agent=createAgent(agentName,depth);
+		LongFunction<Controller<EnumMap<GHOST, MOVE>>> ghostFactory=createGhosts(ghostType);
+		Controller<EnumMap<GHOST, MOVE>> ghosts=ghostFactory.apply(new Random().nextLong());
+
+		if (baselineName != null)
+			exec.runPairedExperiment(agent, createAgent(baselineName, depth), ghostFactory, numTrials);
+		else if (visual && timeIt)
+			exec.runGameTimed(agent, ghosts, visual);
+		else if (visual)
+			exec.runGame(agent, ghosts, visual, delay);
+		else
+			exec.runExperiment(agent, ghosts, numTrials);
+	}
+
+	private static Controller<MOVE> createAgent(String agentName,int depth)
+	{
 		switch (agentName) {
 			case "MonteCarloAgent":
-				agent = new MonteCarloAgent();
-				break;
+				return new MonteCarloAgent();
 			case "HeuristicAgent":
-				agent = new HeuristicAgent();
-				break;
+				return new HeuristicAgent();
 			case "MinimaxAgent":
-				agent = new MinimaxAgent(depth);
-				break;
+				return new MinimaxAgent(depth);
 			default:
-				agent = new AlphaBetaAgent(depth);
-				break;
+				return new AlphaBetaAgent(depth);
 		}
+	}
 
-		Controller<EnumMap<GHOST, MOVE>> ghosts;
+	//creates ghost controllers whose random choices are drawn from the given seed
+	private static LongFunction<Controller<EnumMap<GHOST, MOVE>>> createGhosts(String ghostType)
+	{
 		switch (ghostType) {
 			case "RandomGhosts":
-				ghosts = new RandomGhosts();
-				break;
+				return RandomGhosts::new;
 			case "AggressiveGhosts":
-				ghosts = new AggressiveGhosts();
-				break;
+				return AggressiveGhosts::new;
 			case "StarterGhosts":
-				ghosts = new StarterGhosts();
-				break;
+				return StarterGhosts::new;
 			default:
-				ghosts = new Legacy2TheReckoning();
-				break;
+				return seed -> new Legacy2TheReckoning();	//makes no random choices
 		}
-
-
-		if (visual && timeIt)
-			exec.runGameTimed(agent, ghosts, visual);
-		else if (visual)
-			exec.runGame(agent, ghosts, visual, delay);
-		else
-			exec.runExperiment(agent, ghosts, numTrials);
 	}
 	
     /**
@@ -118,20 +136,85 @@ public class Executor
 		for(int i=0;i<trials;i++)
 		{
 			game=new Game(rnd.nextLong());
-			
-			while(!game.gameOver())
-			{
-		        game.advanceGame(pacManController.getMove(game.copy(),System.currentTimeMillis()+DELAY),
-		        		ghostController.getMove(game.copy(),System.currentTimeMillis()+DELAY));
-			}
+			playOut(game,pacManController,ghostController);
 			
 			avgScore+=game.getScore();
 			System.out.println(i+"\t"+game.getScore());
 		}
 		
 		System.out.println(avgScore/trials);
+		
+		reportStats(pacManController,ghostController);
     }
 	
+	/**
+	 * For comparing two Pac-Man agents, or two versions of one, with far fewer games than runExperiment() needs.
+	 * Both agents play every trial under common random numbers: the same game seed, the same global reversal events
+	 * (see Game.setReversalSeed()) and ghosts created with the same seed, so that the difference of their scores
+	 * reflects the agents rather than luck. The ghosts' random choices only stay aligned while they are asked for
+	 * them in the same order, so the coupling weakens as the two games diverge. Prints the scores of each trial and
+	 * the mean difference, first minus second, with its confidence interval (see PairedComparison).
+	 *
+	 * @param first The first Pac-Man agent
+	 * @param second The second Pac-Man agent
+	 * @param ghostFactory Creates the ghosts of a game from a seed
+	 * @param trials The number of trials, each played by both agents
+	 * @return The comparison
+	 */
+	public PairedComparison runPairedExperiment(Controller<MOVE> first,Controller<MOVE> second,LongFunction<? extends Controller<EnumMap<GHOST,MOVE>>> ghostFactory,int trials)
+	{
+		PairedComparison comparison=new PairedComparison();
+		Random rnd=new Random(0);
+		
+		for(int i=0;i<trials;i++)
+		{
+			long gameSeed=rnd.nextLong(),ghostSeed=rnd.nextLong(),reversalSeed=rnd.nextLong();
+			int[] scores=new int[2];
+			
+			//alternate which agent plays first, so that neither gets the warmer JIT or quieter machine throughout
+			for(int k=0;k<2;k++)
+			{
+				int contender=(i+k)%2;
+				Game game=new Game(gameSeed);
+				game.setReversalSeed(reversalSeed);
+				
+				playOut(game,contender==0 ? first : second,ghostFactory.apply(ghostSeed));
+				scores[contender]=game.getScore();
+			}
+			
+			comparison.add(scores[0],scores[1]);
+			System.out.println(i+"\t"+scores[0]+"\t"+scores[1]+"\t"+(scores[0]-scores[1]));
+		}
+		
+		String firstName=first.getClass().getSimpleName(),secondName=second.getClass().getSimpleName();
+		
+		if(firstName.equals(secondName))
+		{
+			firstName+=" (first)";
+			secondName+=" (second)";
+		}
+		
+		System.out.println(comparison.report(firstName,secondName));
+		return comparison;
+	}
+	
+	//play the game to the end without visuals, each controller getting DELAY milliseconds per move
+	private static void playOut(Game game,Controller<MOVE> pacManController,Controller<EnumMap<GHOST,MOVE>> ghostController)
+	{
+		while(!game.gameOver())
+		{
+			TickEvent tick=new TickEvent();
+			tick.begin();
+			
+			Game snapshot=game.snapshot();
+			
+	        game.advanceGame(pacManController.computeMove(snapshot,System.currentTimeMillis()+DELAY),
+	        		ghostController.computeMove(snapshot,System.currentTimeMillis()+DELAY));
+	        
+	        tick.finish(game);
+		}
+	}
+	
 	/**
 	 * Run a game in asynchronous mode: the game waits until a move is returned. In order to slow thing down in case
 	 * the controllers return very quickly, a time limit can be used. If fasted gameplay is required, this delay
@@ -154,12 +237,20 @@ public class Executor
 		while(!game.gameOver())
 		{
 			
-	        game.advanceGame(pacManController.getMove(game.copy(),-1),ghostController.getMove(game.copy(),-1));
+			TickEvent tick=new TickEvent();
+			tick.begin();
+			
+			Game snapshot=game.snapshot();
+			
+	        game.advanceGame(pacManController.computeMove(snapshot,-1),ghostController.computeMove(snapshot,-1));
+	        tick.finish(game);
 	        try{Thread.sleep(delay);}catch(Exception e){}
 	        
 	        if(visual)
-	        	gv.repaint();
+	        	gv.publishFrame();
 		}
+		
+		reportStats(pacManController,ghostController);
 	}
 	
 	/**
@@ -187,26 +278,32 @@ public class Executor
 		
 		while(!game.gameOver())
 		{
-			pacManController.update(game.copy(),System.currentTimeMillis()+DELAY);
-			ghostController.update(game.copy(),System.currentTimeMillis()+DELAY);
+			long deadline=TickScheduler.deadlineIn(DELAY);
+			TickEvent tick=new TickEvent();
+			tick.begin();
+			
+			Game snapshot=game.snapshot();	//shared by both controllers
+			pacManController.update(snapshot,System.currentTimeMillis()+DELAY);
+			ghostController.update(snapshot,System.currentTimeMillis()+DELAY);
 
-			try
-			{
-				Thread.sleep(DELAY);
-			}
-			catch(InterruptedException e)
-			{
-				e.printStackTrace();
-			}
+			TickScheduler.awaitDeadline(deadline);
 
-	        game.advanceGame(pacManController.getMove(),ghostController.getMove());	   
+	        tick.pacManReplied=pacManController.hasComputed();
+	        tick.ghostsReplied=ghostController.hasComputed();
+	        tick.pacManFellBack=!tick.pacManReplied && pacManController.hasPublished();
+	        tick.ghostsFellBack=!tick.ghostsReplied && ghostController.hasPublished();
+	        countMissed(pacManController,ghostController);
+	        game.advanceGame(pacManController.getMove(),ghostController.getMove());
+	        tick.finish(game);
 	        
 	        if(visual)
-	        	gv.repaint();
+	        	gv.publishFrame();
 		}
 		
 		pacManController.terminate();
 		ghostController.terminate();
+		
+		reportStats(pacManController,ghostController);
 	}
 	
     /**
@@ -235,40 +332,36 @@ public class Executor
  		
  		while(!game.gameOver())
  		{
- 			pacManController.update(game.copy(),System.currentTimeMillis()+DELAY);
- 			ghostController.update(game.copy(),System.currentTimeMillis()+DELAY);
+ 			long deadline=TickScheduler.deadlineIn(DELAY);
+ 			TickEvent tick=new TickEvent();
+ 			tick.begin();
+ 			
+ 			Game snapshot=game.snapshot();	//shared by both controllers
+ 			pacManController.update(snapshot,System.currentTimeMillis()+DELAY);
+ 			ghostController.update(snapshot,System.currentTimeMillis()+DELAY);
 
- 			try
-			{
-				int waited=DELAY/INTERVAL_WAIT;
-				
-				for(int j=0;j<DELAY/INTERVAL_WAIT;j++)
-				{
-					Thread.sleep(INTERVAL_WAIT);
-					
-					if(pacManController.hasComputed() && ghostController.hasComputed())
-					{
-						waited=j;
-						break;
-					}
-				}
-				
-				if(fixedTime)
-					Thread.sleep(((DELAY/INTERVAL_WAIT)-waited)*INTERVAL_WAIT);
-				
-				game.advanceGame(pacManController.getMove(),ghostController.getMove());	
-			}
-			catch(InterruptedException e)
-			{
-				e.printStackTrace();
-			}
+ 			//wakes up as soon as both controllers have replied, or when the time is up
+ 			TickScheduler.awaitComputed(deadline,pacManController,ghostController);
+ 			
+ 			if(fixedTime)
+ 				TickScheduler.awaitDeadline(deadline);
+ 			
+ 			tick.pacManReplied=pacManController.hasComputed();
+ 			tick.ghostsReplied=ghostController.hasComputed();
+ 			tick.pacManFellBack=!tick.pacManReplied && pacManController.hasPublished();
+ 			tick.ghostsFellBack=!tick.ghostsReplied && ghostController.hasPublished();
+ 			countMissed(pacManController,ghostController);
+ 			game.advanceGame(pacManController.getMove(),ghostController.getMove());
+ 			tick.finish(game);
  	        
  	        if(visual)
- 	        	gv.repaint();
+ 	        	gv.publishFrame();
  		}
  		
  		pacManController.terminate();
  		ghostController.terminate();
+ 		
+ 		reportStats(pacManController,ghostController);
  	}
     
 	/**
@@ -281,8 +374,6 @@ public class Executor
 	 */
 	public void runGameTimedRecorded(Controller<MOVE> pacManController,Controller<EnumMap<GHOST,MOVE>> ghostController,boolean visual,String fileName)
 	{
-		StringBuilder replay=new StringBuilder();
-		
 		Game game=new Game(0);
 		
 		GameView gv=null;
@@ -298,44 +389,55 @@ public class Executor
 		new Thread(pacManController).start();
 		new Thread(ghostController).start();
 		
-		while(!game.gameOver())
+		//the replay is streamed to the file as the game proceeds
+		try(ReplayWriter replay=new ReplayWriter(fileName))
 		{
-			pacManController.update(game.copy(),System.currentTimeMillis()+DELAY);
-			ghostController.update(game.copy(),System.currentTimeMillis()+DELAY);
-
-			try
-			{
-				Thread.sleep(DELAY);
-			}
-			catch(InterruptedException e)
+			while(!game.gameOver())
 			{
-				e.printStackTrace();
+				long deadline=TickScheduler.deadlineIn(DELAY);
+				TickEvent tick=new TickEvent();
+				tick.begin();
+				
+				Game snapshot=game.snapshot();	//shared by both controllers
+				pacManController.update(snapshot,System.currentTimeMillis()+DELAY);
+				ghostController.update(snapshot,System.currentTimeMillis()+DELAY);
+	
+				TickScheduler.awaitDeadline(deadline);
+	
+		        tick.pacManReplied=pacManController.hasComputed();
+		        tick.ghostsReplied=ghostController.hasComputed();
+		        tick.pacManFellBack=!tick.pacManReplied && pacManController.hasPublished();
+		        tick.ghostsFellBack=!tick.ghostsReplied && ghostController.hasPublished();
+		        countMissed(pacManController,ghostController);
+		        game.advanceGame(pacManController.getMove(),ghostController.getMove());
+		        tick.finish(game);
+		        
+		        if(visual)
+		        	gv.publishFrame();
+		        
+		        replay.write(game);
 			}
-
-	        game.advanceGame(pacManController.getMove(),ghostController.getMove());	        
-	        
-	        if(visual)
-	        	gv.repaint();
-	        
-	        replay.append(game.getGameState()+"\n");
+		}
+		catch(IOException e)
+		{
+			System.out.println("Could not save data!");
 		}
 		
 		pacManController.terminate();
 		ghostController.terminate();
 		
-		saveToFile(replay.toString(),fileName,false);
+		reportStats(pacManController,ghostController);
 	}
 	
 	/**
-	 * Replay a previously saved game.
+	 * Replay a previously saved game. Both the binary replays written by runGameTimedRecorded and
+	 * the text replays of earlier versions (one game state string per line) can be played.
 	 *
 	 * @param fileName The file name of the game to be played
 	 * @param visual Indicates whether or not to use visuals
 	 */
 	public void replayGame(String fileName,boolean visual)
 	{
-		ArrayList<String> timeSteps=loadReplay(fileName);
-		
 		Game game=new Game(0);
 		
 		GameView gv=null;
@@ -343,21 +445,102 @@ public class Executor
 		if(visual)
 			gv=new GameView(game).showGame();
 		
-		for(int j=0;j<timeSteps.size();j++)
-		{			
-			game.setGameState(timeSteps.get(j));
-
-			try
+		if(ReplayReader.isBinaryReplay(fileName))
+		{
+			try(ReplayReader replay=new ReplayReader(fileName))
 			{
-				Thread.sleep(DELAY);
+				while(replay.next(game))
+					showReplayStep(gv);
 			}
-			catch(InterruptedException e)
+			catch(IOException e)
 			{
 				e.printStackTrace();
 			}
-	        if(visual)
-	        	gv.repaint();
 		}
+		else
+		{
+			for(String timeStep : loadReplay(fileName))
+			{
+				game.setGameState(timeStep);
+				showReplayStep(gv);
+			}
+		}
+	}
+	
+	//wait for the duration of a time step, then show the new state
+	private static void showReplayStep(GameView gv)
+	{
+		try
+		{
+			Thread.sleep(DELAY);
+		}
+		catch(InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		
+        if(gv!=null)
+        	gv.publishFrame();
+	}
+	
+	/**
+	 * Appends the controller statistics (see ControllerStats) to the given CSV file at the end of
+	 * each game or experiment, in addition to printing them. The header is written when the file
+	 * is created.
+	 *
+	 * @param fileName The CSV file, or null to only print the statistics
+	 */
+	public void setStatsFile(String fileName)
+	{
+		statsFile=fileName;
+	}
+	
+	//print (and export) the statistics of both controllers, then start afresh for the next run
+	private void reportStats(Controller<MOVE> pacManController,Controller<EnumMap<GHOST,MOVE>> ghostController)
+	{
+		String pacManName=pacManController.getClass().getSimpleName();
+		String ghostName=ghostController.getClass().getSimpleName();
+		
+		System.out.println(pacManController.getStats().report(pacManName));
+		System.out.println(ghostController.getStats().report(ghostName));
+		
+		//search agents also report what their searches did over the run
+		for(Controller<?> controller : new Controller<?>[]{pacManController,ghostController})
+		{
+			if(controller instanceof SearchAgent)
+			{
+				SearchStats search=((SearchAgent)controller).getSearchStats();
+				System.out.println(search.report(controller.getClass().getSimpleName()));
+				search.reset();
+			}
+		}
+		
+		if(statsFile!=null)
+		{
+			String rows=pacManController.getStats().toCsv(pacManName)+"\n"+ghostController.getStats().toCsv(ghostName);
+			
+			if(!new File(statsFile).exists())
+				rows=ControllerStats.CSV_HEADER+"\n"+rows;
+			
+			saveToFile(rows,statsFile,true);
+		}
+		
+		pacManController.getStats().reset();
+		ghostController.getStats().reset();
+	}
+	
+	//count the controllers that have not replied in time: the game goes ahead with the move they
+	//published for this time step, if any, and otherwise with their previous move
+	private static void countMissed(Controller<?>... controllers)
+	{
+		for(Controller<?> controller : controllers)
+			if(!controller.hasComputed())
+			{
+				if(controller.hasPublished())
+					controller.getStats().recordFallback();
+				else
+					controller.getStats().recordMissed();
+			}
 	}
 	
 	//save file for replays
@@ -1,10 +1,14 @@
 package pacman.controllers;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import pacman.game.Game;
+import pacman.jfr.MoveEvent;
 
 /**
  * This class is the superclass of your controller. In contains the code required to run the 
- * controller as a thread. In provides numerous methods that allow the Executor to use the 
+ * controller as a thread: a single long-lived worker computes every move, picking up the latest
+ * game state handed over by update(). In provides numerous methods that allow the Executor to use the 
  * controller in various different execution modes. Your controller only needs to provide the
  * code for the getMove() method.
  *
@@ -12,11 +16,18 @@ import pacman.game.Game;
  */
 public abstract class Controller<T> implements Runnable
 {
-	private boolean alive,wasSignalled,hasComputed;
-	private volatile boolean threadStillRunning;
-	private long timeDue;
-	private Game game;
-	protected T lastMove;	//this is now protected. You can set this directly in your getMove() method to save an immediate response.
+	//milliseconds before the move is due that isCancelled() turns true, so a search has time to
+	//return before the game loop reads the move
+	public static final long CANCEL_MARGIN=2;
+
+	private volatile boolean alive;
+	private volatile Thread worker;
+	private final AtomicReference<Request> pending;	//single-slot mailbox: only the latest update is kept
+	private volatile long updates,computed;				//sequence numbers of the last update and the last move computed
+	private volatile long working,published;			//sequence numbers of the update being worked on and of the last move published
+	volatile Thread waiter;								//thread parked in TickScheduler waiting for this controller, if any
+	private final ControllerStats stats;				//latency, allocation and deadline statistics of getMove()
+	protected volatile T lastMove;	//the latest move published, see publishMove()
 
 	/**
 	 * Instantiates a new controller. The constructor initialises the class variables.
@@ -24,43 +35,35 @@ public abstract class Controller<T> implements Runnable
 	public Controller()
 	{
 		alive=true;
-		wasSignalled=false;
-		hasComputed=false;
-		threadStillRunning=false;
+		pending=new AtomicReference<Request>();
+		updates=0;
+		computed=0;
+		stats=new ControllerStats();
 	}
 
 	/**
-	 * Terminates the controller: a signal is sent and the flag "alive" is set to false. When
-	 * the thread wakes up, the outer loop will terminate and the thread finishes.
+	 * Terminates the controller: the flag "alive" is set to false and the worker thread is woken
+	 * up, so its loop terminates and the thread finishes.
 	 */
 	public final void terminate()
 	{
 		alive=false;
-		wasSignalled=true;
-
-		synchronized(this)
-		{
-			notify();
-		}
+		LockSupport.unpark(worker);
 	}
 
 	/**
-	 * Updates the game state: a copy of the game is passed to this method and the class variable is
-	 * updated accordingly.
+	 * Updates the game state: a copy of the game is passed to this method and handed over to the
+	 * worker thread. If the worker is still busy with an earlier state, the earlier pending state
+	 * (if any) is replaced, so the worker always continues with the most recent one.
 	 *
 	 * @param game A copy of the current game
 	 * @param timeDue The time the next move is due
 	 */
 	public final void update(Game game,long timeDue)
 	{
-		synchronized(this)
-		{
-			this.game=game;
-			this.timeDue=timeDue;
-			wasSignalled=true;
-			hasComputed=false;
-			notify();
-		}
+		long sequence=++updates;	//only the game loop calls update()
+		pending.set(new Request(game,timeDue,sequence));
+		LockSupport.unpark(worker);
 	}
 
 	/**
@@ -73,44 +76,145 @@ public abstract class Controller<T> implements Runnable
 		return lastMove;
 	}
 	
+	/**
+	 * Publishes the best move found so far. Anytime controllers call this from getMove() whenever
+	 * their search has improved on the previous answer: if the time runs out before getMove()
+	 * returns, the executor plays the move published last instead of the one from the previous
+	 * time step. The value returned by getMove() is published automatically.
+	 *
+	 * @param move The best move found so far
+	 */
+	protected final void publishMove(T move)
+	{
+		lastMove=move;
+		published=working;
+	}
+	
+	/**
+	 * The cooperative cancellation signal for anytime controllers: a search running inside
+	 * getMove() should poll this and return as soon as it becomes true. That is the case
+	 * CANCEL_MARGIN milliseconds before the move is due, once a newer game state is waiting for the
+	 * controller, or once the controller has been terminated.
+	 *
+	 * @param timeDue The time the move is due, as passed to getMove() (-1 for no time limit)
+	 * @return Whether the search should stop and return its best move
+	 */
+	protected final boolean isCancelled(long timeDue)
+	{
+		return !alive || pending.get()!=null || (timeDue>=0 && System.currentTimeMillis()>=timeDue-CANCEL_MARGIN);
+	}
+	
 	/* (non-Javadoc)
+	 * The worker loop: the thread running this method computes all moves of the controller,
+	 * sleeping while there is no new game state to work on.
+	 * 
 	 * @see java.lang.Runnable#run()
 	 */
 	public final void run()
 	{
+		worker=Thread.currentThread();
+		
 		while(alive)
 		{
-			synchronized(this)
+			Request request=pending.getAndSet(null);
+			
+			if(request==null)
 			{
-				while(!wasSignalled)
-				{
-					try
-					{
-						wait();
-					}
-					catch(InterruptedException e)
-					{
-						e.printStackTrace();
-					}
-				}
+				if(!idle())
+					LockSupport.park(this);
 				
-				if(!threadStillRunning)
-				{
-					new Thread()
-					{
-						public void run()
-						{
-							threadStillRunning=true;
-							lastMove = getMove(game,timeDue);
-							hasComputed=true;
-							threadStillRunning=false;
-						}
-					}.start();
-				}
-				
-				wasSignalled=false;
+				continue;
+			}
+			
+			try
+			{
+				working=request.sequence;
+				lastMove=computeMove(request.game,request.timeDue);
+				computed=request.sequence;
+				LockSupport.unpark(waiter);
+			}
+			catch(RuntimeException e)
+			{
+				e.printStackTrace();
 			}
 		}
+		
+		worker=null;
+	}
+	
+	//runs ponder() on the worker thread, keeping a failing controller from killing the worker
+	private boolean idle()
+	{
+		try
+		{
+			return ponder();
+		}
+		catch(RuntimeException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Uses the time between moves: the worker thread calls this whenever it has returned a move
+	 * and no newer game state is waiting, and keeps calling it until it returns false or a new
+	 * state arrives. The work should poll isCancelled(-1) and stop as soon as it becomes true, so
+	 * the next move is not held up. Only the worker thread calls this, so controllers run
+	 * synchronously (as in runExperiment()) never ponder. The default does nothing.
+	 *
+	 * @return Whether there is more work to do
+	 */
+	protected boolean ponder()
+	{
+		return false;
+	}
+	
+	/**
+	 * Computes the next move by calling getMove() and records how long it took, how much memory
+	 * it allocated and whether it was late in the controller's statistics (and as a flight
+	 * recorder MoveEvent). The worker thread
+	 * uses this for every move; executors calling the controller synchronously should too.
+	 *
+	 * @param game A copy of the current game
+	 * @param timeDue The time the next move is due (-1 for no time limit)
+	 * @return The move computed by getMove()
+	 */
+	public final T computeMove(Game game,long timeDue)
+	{
+		MoveEvent event=new MoveEvent();
+		long allocated=ControllerStats.currentThreadAllocatedBytes();
+		long start=System.nanoTime();
+		event.begin();
+		
+		T move=getMove(game,timeDue);
+		
+		event.end();
+		long nanos=System.nanoTime()-start;
+		long bytes=allocated<0 ? -1 : ControllerStats.currentThreadAllocatedBytes()-allocated;
+		boolean late=timeDue>=0 && System.currentTimeMillis()>timeDue;
+		stats.recordMove(nanos,bytes,late);
+		
+		if(event.shouldCommit())
+		{
+			event.controller=getClass().getSimpleName();
+			event.tick=game.getTotalTime();
+			event.maze=game.getMazeIndex();
+			event.late=late;
+			event.commit();
+		}
+		
+		return move;
+	}
+	
+	/**
+	 * Returns the statistics recorded for this controller's moves.
+	 * 
+	 * @return The statistics
+	 */
+	public final ControllerStats getStats()
+	{
+		return stats;
 	}
 	
 	/**
@@ -121,7 +225,19 @@ public abstract class Controller<T> implements Runnable
 	 */
 	public final boolean hasComputed()
 	{
-		return hasComputed;
+		return computed==updates;
+	}
+
+	/**
+	 * This method is used to check whether the controller published a move with publishMove()
+	 * since the last update of the game, so if it has not computed its move yet, the game goes
+	 * ahead with a move searched for this time step rather than the previous one.
+	 *
+	 * @return Whether or not the controller published a move since the last update
+	 */
+	public final boolean hasPublished()
+	{
+		return published==updates;
 	}
 
 	/**
@@ -131,9 +247,28 @@ public abstract class Controller<T> implements Runnable
 	 * Your controllers must be in the files: pacman.entries.pacman.MyPacMan.java for Pac-Man controllers or
 	 * pacman.entries.ghosts.MyGhosts.java for ghosts controllers.
 	 *
+	 * Controllers that search can make use of the whole time budget by publishing their best move
+	 * so far with publishMove() and returning once isCancelled() becomes true.
+	 *
 	 * @param game A copy of the current game
 	 * @param timeDue The time the next move is due
 	 * @return The move to be played (i.e., the move calculated by your controller)
 	 */
 	public abstract T getMove(Game game,long timeDue);
+	
+	/*
+	 * A game state handed from update() to the worker thread.
+	 */
+	private static final class Request
+	{
+		final Game game;
+		final long timeDue,sequence;
+		
+		Request(Game game,long timeDue,long sequence)
+		{
+			this.game=game;
+			this.timeDue=timeDue;
+			this.sequence=sequence;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package pacman.controllers;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Timing statistics of a controller: the latency of every getMove() call in a log-bucketed
+ * histogram, the bytes the calling thread allocated during the call (where the JVM supports
+ * per-thread allocation counters), how many moves were finished after they were due, how many
+ * times the executor went ahead without a reply but with a move the controller had published for
+ * the time step (fallbacks), and how many times it had nothing and replayed the previous move
+ * (misses).
+ *
+ * Moves are recorded by the thread that computes them and misses by the game loop, so all
+ * methods are synchronized; neither side ever contends for long.
+ */
+public class ControllerStats
+{
+	public static final String CSV_HEADER="controller,moves,late,fallbacks,missed,latency_p50_us,latency_p99_us,latency_p999_us,latency_max_us,alloc_mean_bytes,alloc_p99_bytes";
+
+	private static final com.sun.management.ThreadMXBean THREADS=threadBean();
+
+	private final LogHistogram latency,allocated;
+	private long late,fallbacks,missed;
+
+	/**
+	 * Instantiates empty statistics.
+	 */
+	public ControllerStats()
+	{
+		latency=new LogHistogram();
+		allocated=new LogHistogram();
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM does
+	 * not count allocations per thread.
+	 *
+	 * @return The bytes allocated by the current thread
+	 */
+	public static long currentThreadAllocatedBytes()
+	{
+		return THREADS==null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Records one computed move.
+	 *
+	 * @param nanos The time getMove() took, in nanoseconds
+	 * @param bytes The bytes allocated during the call, or a negative value if unknown
+	 * @param wasLate Whether the move was finished after the time it was due
+	 */
+	public synchronized void recordMove(long nanos,long bytes,boolean wasLate)
+	{
+		latency.record(nanos);
+
+		if(bytes>=0)
+			allocated.record(bytes);
+
+		if(wasLate)
+			late++;
+	}
+
+	/**
+	 * Records a time step the game went ahead without a reply, with a move published for it.
+	 */
+	public synchronized void recordFallback()
+	{
+		fallbacks++;
+	}
+
+	/**
+	 * Records a time step the game went ahead without a move computed or published for it.
+	 */
+	public synchronized void recordMissed()
+	{
+		missed++;
+	}
+
+	public synchronized long getMoves()
+	{
+		return latency.getCount();
+	}
+
+	public synchronized long getLate()
+	{
+		return late;
+	}
+
+	public synchronized long getFallbacks()
+	{
+		return fallbacks;
+	}
+
+	public synchronized long getMissed()
+	{
+		return missed;
+	}
+
+	/**
+	 * Returns the latency at the given percentile, in nanoseconds.
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The latency at the percentile
+	 */
+	public synchronized long getLatencyAtPercentile(double percentile)
+	{
+		return latency.getValueAtPercentile(percentile);
+	}
+
+	public synchronized void reset()
+	{
+		latency.reset();
+		allocated.reset();
+		late=0;
+		fallbacks=0;
+		missed=0;
+	}
+
+	/**
+	 * A one-line human readable summary, as printed at the end of a game.
+	 *
+	 * @param name The name of the controller
+	 * @return The summary
+	 */
+	public synchronized String report(String name)
+	{
+		return String.format(Locale.ROOT,"%s: %d moves, %d late, %d fell back, %d missed, latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms, %s",
+				name,latency.getCount(),late,fallbacks,missed,
+				latency.getValueAtPercentile(50)/1e6,latency.getValueAtPercentile(99)/1e6,
+				latency.getValueAtPercentile(99.9)/1e6,latency.getMax()/1e6,
+				allocated.getCount()==0 ? "allocation not measured" : String.format(Locale.ROOT,"%.0f bytes allocated per move",allocated.getMean()));
+	}
+
+	/**
+	 * One CSV row in the format of CSV_HEADER (latencies in microseconds).
+	 *
+	 * @param name The name of the controller
+	 * @return The row
+	 */
+	public synchronized String toCsv(String name)
+	{
+		return String.format(Locale.ROOT,"%s,%d,%d,%d,%d,%d,%d,%d,%d,%.0f,%d",
+				name,latency.getCount(),late,fallbacks,missed,
+				latency.getValueAtPercentile(50)/1000,latency.getValueAtPercentile(99)/1000,
+				latency.getValueAtPercentile(99.9)/1000,latency.getMax()/1000,
+				allocated.getMean(),allocated.getValueAtPercentile(99));
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean()
+	{
+		try
+		{
+			java.lang.management.ThreadMXBean bean=ManagementFactory.getThreadMXBean();
+
+			if(bean instanceof com.sun.management.ThreadMXBean)
+			{
+				com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)bean;
+
+				if(threads.isThreadAllocatedMemorySupported())
+				{
+					threads.setThreadAllocatedMemoryEnabled(true);
+					return threads;
+				}
+			}
+		}
+		catch(UnsupportedOperationException | LinkageError e)
+		{
+			//not a HotSpot-style JVM: allocation is simply not measured
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,132 @@
+package pacman.controllers;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values with log-spaced buckets, in the style of HdrHistogram:
+ * every power of two is split into SUB_BUCKETS linear buckets, so any recorded value is known to
+ * within about 3% while the whole long range fits in a fixed array of counts. Recording is a
+ * couple of shifts and an increment, with no allocation.
+ */
+public class LogHistogram
+{
+	private static final int SUB_BITS=5;
+	private static final int SUB_BUCKETS=1<<SUB_BITS;
+	private static final int BUCKETS=SUB_BUCKETS+(63-SUB_BITS)*SUB_BUCKETS;
+
+	private final long[] counts;
+	private long count,total,max;
+
+	/**
+	 * Instantiates an empty histogram.
+	 */
+	public LogHistogram()
+	{
+		counts=new long[BUCKETS];
+	}
+
+	/**
+	 * Records a value; negative values are counted as 0.
+	 *
+	 * @param value The value to record
+	 */
+	public void record(long value)
+	{
+		if(value<0)
+			value=0;
+
+		counts[indexOf(value)]++;
+		count++;
+		total+=value;
+
+		if(value>max)
+			max=value;
+	}
+
+	/**
+	 * Returns the value below which the given percentage of the recorded values fall, to within the
+	 * resolution of the buckets (the highest value of the bucket, capped at the maximum recorded).
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The value at the percentile, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(count==0)
+			return 0;
+
+		long target=Math.max(1,(long)Math.ceil(count*percentile/100.0));
+		long seen=0;
+
+		for(int i=0;i<BUCKETS;i++)
+		{
+			seen+=counts[i];
+
+			if(seen>=target)
+				return Math.min(highestValueOf(i),max);
+		}
+
+		return max;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+
+	public double getMean()
+	{
+		return count==0 ? 0 : (double)total/count;
+	}
+
+	/**
+	 * Adds all values recorded in another histogram to this one.
+	 *
+	 * @param other The histogram to add
+	 */
+	public void add(LogHistogram other)
+	{
+		for(int i=0;i<BUCKETS;i++)
+			counts[i]+=other.counts[i];
+
+		count+=other.count;
+		total+=other.total;
+		max=Math.max(max,other.max);
+	}
+
+	public void reset()
+	{
+		Arrays.fill(counts,0);
+		count=0;
+		total=0;
+		max=0;
+	}
+
+	private static int indexOf(long value)
+	{
+		if(value<SUB_BUCKETS)
+			return (int)value;
+
+		int exponent=63-Long.numberOfLeadingZeros(value);	//at least SUB_BITS here
+		int shift=exponent-SUB_BITS;
+		int sub=(int)(value>>>shift)-SUB_BUCKETS;			//the SUB_BITS bits below the leading one
+
+		return SUB_BUCKETS+shift*SUB_BUCKETS+sub;
+	}
+
+	private static long highestValueOf(int index)
+	{
+		if(index<SUB_BUCKETS)
+			return index;
+
+		int shift=(index-SUB_BUCKETS)/SUB_BUCKETS;
+		long sub=(index-SUB_BUCKETS)%SUB_BUCKETS;
+
+		return ((SUB_BUCKETS+sub+1)<<shift)-1;
+	}
+}
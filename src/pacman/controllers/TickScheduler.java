@@ -0,0 +1,91 @@
+package pacman.controllers;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets the game loop wait for the controllers without polling. A waiting thread registers itself
+ * with the controllers and parks; each controller unparks it the moment it publishes a move, so the
+ * loop proceeds as soon as the last one has replied. Deadlines are absolute System.nanoTime() values
+ * and are enforced with timed parks, spinning only for the last few microseconds.
+ */
+public final class TickScheduler
+{
+	private static final long SPIN_NANOS=50_000;	//below this, spinning is more precise than parking
+
+	private TickScheduler()
+	{
+	}
+
+	/**
+	 * Waits until all controllers have computed a move since their last update, or until the
+	 * deadline has passed, whichever comes first.
+	 *
+	 * @param deadline The absolute deadline in System.nanoTime() units
+	 * @param controllers The controllers to wait for
+	 * @return Whether all controllers replied before the deadline
+	 */
+	public static boolean awaitComputed(long deadline,Controller<?>... controllers)
+	{
+		Thread current=Thread.currentThread();
+
+		for(Controller<?> controller : controllers)
+			controller.waiter=current;
+
+		try
+		{
+			while(!allComputed(controllers))
+			{
+				long remaining=deadline-System.nanoTime();
+
+				if(remaining<=0)
+					return false;
+
+				LockSupport.parkNanos(controllers,remaining);
+			}
+
+			return true;
+		}
+		finally
+		{
+			for(Controller<?> controller : controllers)
+				controller.waiter=null;
+		}
+	}
+
+	/**
+	 * Waits until the deadline has passed.
+	 *
+	 * @param deadline The absolute deadline in System.nanoTime() units
+	 */
+	public static void awaitDeadline(long deadline)
+	{
+		long remaining;
+
+		while((remaining=deadline-System.nanoTime())>SPIN_NANOS)
+			LockSupport.parkNanos(remaining-SPIN_NANOS);
+
+		while(deadline-System.nanoTime()>0)
+			Thread.onSpinWait();
+	}
+
+	/**
+	 * Returns the absolute deadline (in System.nanoTime() units) the given number of
+	 * milliseconds from now.
+	 *
+	 * @param millis The time from now in milliseconds
+	 * @return The deadline
+	 */
+	public static long deadlineIn(long millis)
+	{
+		return System.nanoTime()+millis*1_000_000L;
+	}
+
+	private static boolean allComputed(Controller<?>[] controllers)
+	{
+		for(Controller<?> controller : controllers)
+			if(!controller.hasComputed())
+				return false;
+
+		return true;
+	}
+}
@@ -15,9 +15,24 @@ import static pacman.game.Constants.*;
 public final class AggressiveGhosts extends Controller<EnumMap<GHOST,MOVE>>
 {	
 	private final static float CONSISTENCY=1.0f;	//carry out intended move with this probability
-	private Random rnd=new Random();
+	private Random rnd;
 	private EnumMap<GHOST,MOVE> myMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
 	private MOVE[] moves=MOVE.values();
+
+	public AggressiveGhosts()
+	{
+		rnd=new Random();
+	}
+	
+	/**
+	 * Creates the controller with a seeded random number generator, so that its random choices can be repeated.
+	 * 
+	 * @param seed The seed of the random number generator
+	 */
+	public AggressiveGhosts(long seed)
+	{
+		rnd=new Random(seed);
+	}
 		
 	/* (non-Javadoc)
 	 * @see pacman.controllers.Controller#getMove(pacman.game.Game, long)
@@ -12,9 +12,24 @@ import static pacman.game.Constants.*;
  */
 public class Legacy extends Controller<EnumMap<GHOST,MOVE>>
 {
-	Random rnd=new Random();
+	Random rnd;
 	EnumMap<GHOST,MOVE> myMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
 	MOVE[] moves=MOVE.values();
+
+	public Legacy()
+	{
+		rnd=new Random();
+	}
+	
+	/**
+	 * Creates the controller with a seeded random number generator, so that its random choices can be repeated.
+	 * 
+	 * @param seed The seed of the random number generator
+	 */
+	public Legacy(long seed)
+	{
+		rnd=new Random(seed);
+	}
 	
 	/* (non-Javadoc)
 	 * @see pacman.controllers.Controller#getMove(pacman.game.Game, long)
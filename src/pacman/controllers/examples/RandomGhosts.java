@@ -14,7 +14,22 @@ public final class RandomGhosts extends Controller<EnumMap<GHOST,MOVE>>
 {	
 	private EnumMap<GHOST,MOVE> moves=new EnumMap<GHOST,MOVE>(GHOST.class);
 	private MOVE[] allMoves=MOVE.values();
-	private Random rnd=new Random();
+	private Random rnd;
+
+	public RandomGhosts()
+	{
+		rnd=new Random();
+	}
+	
+	/**
+	 * Creates the controller with a seeded random number generator, so that its random choices can be repeated.
+	 * 
+	 * @param seed The seed of the random number generator
+	 */
+	public RandomGhosts(long seed)
+	{
+		rnd=new Random(seed);
+	}
 	
 	/* (non-Javadoc)
 	 * @see pacman.controllers.Controller#getMove(pacman.game.Game, long)
@@ -21,8 +21,23 @@ public final class StarterGhosts extends Controller<EnumMap<GHOST,MOVE>>
 	private final static float CONSISTENCY=0.5f;	//attack Ms Pac-Man with this probability
 	private final static int PILL_PROXIMITY=15;		//if Ms Pac-Man is this close to a power pill, back away
 	
-	Random rnd=new Random();
+	Random rnd;
 	EnumMap<GHOST,MOVE> myMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+
+	public StarterGhosts()
+	{
+		rnd=new Random();
+	}
+	
+	/**
+	 * Creates the controller with a seeded random number generator, so that its random choices can be repeated.
+	 * 
+	 * @param seed The seed of the random number generator
+	 */
+	public StarterGhosts(long seed)
+	{
+		rnd=new Random(seed);
+	}
 	
 	public EnumMap<GHOST,MOVE> getMove(Game game,long timeDue)
 	{
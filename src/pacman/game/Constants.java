@@ -118,6 +118,7 @@ public final class Constants {
 	public static final int MAG = 2;
 	public static final int GV_WIDTH = 114;
 	public static final int GV_HEIGHT = 130;
+	public static final int FPS = 30; // frames per second drawn by the game view, regardless of the game speed
 
 	public static String pathImages = "data/images";
 	public static String[] mazeNames = { "maze-a.png", "maze-b.png", "maze-c.png", "maze-d.png" };
@@ -0,0 +1,154 @@
+package pacman.game;
+
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The points and lines the controllers draw for one frame (see GameView.addPoints() and
+ * addLines()), stored as arrays of maze coordinates and RGB colours. Controllers add to the
+ * current overlay from any thread without locking: each claims slots with an atomic counter and
+ * fills them in. When the game loop publishes a frame it swaps the current overlay for an empty
+ * one and waits only for the additions already in progress to finish, so each frame shows exactly
+ * what was drawn while it was computed. Overlays are reused: every frame keeps its own, which
+ * becomes the next current one when the frame is published again.
+ *
+ * Nothing is stored until a game view is shown (see enable()), so controllers that draw cost
+ * nothing but a volatile read when the game runs without visuals. At most CAPACITY points and
+ * CAPACITY lines are kept per frame; further ones are ignored.
+ */
+final class DebugOverlay
+{
+	static final int CAPACITY=4096;
+
+	private static volatile boolean enabled=false;
+	private static final AtomicReference<DebugOverlay> current=new AtomicReference<DebugOverlay>(new DebugOverlay());
+
+	final int[] pointX,pointY,pointColor;
+	final int[] lineX1,lineY1,lineX2,lineY2,lineColor;
+	private final AtomicInteger points,lines,writers;
+
+	DebugOverlay()
+	{
+		pointX=new int[CAPACITY];
+		pointY=new int[CAPACITY];
+		pointColor=new int[CAPACITY];
+		lineX1=new int[CAPACITY];
+		lineY1=new int[CAPACITY];
+		lineX2=new int[CAPACITY];
+		lineY2=new int[CAPACITY];
+		lineColor=new int[CAPACITY];
+		points=new AtomicInteger();
+		lines=new AtomicInteger();
+		writers=new AtomicInteger();
+	}
+
+	/**
+	 * Starts storing what the controllers draw; called when a game view is shown.
+	 */
+	static void enable()
+	{
+		enabled=true;
+	}
+
+	static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	static void addPoints(Game game,Color color,int[] nodeIndices)
+	{
+		DebugOverlay overlay=acquire();
+		int start=overlay.points.getAndAdd(nodeIndices.length);
+		int rgb=color.getRGB();
+
+		for(int i=0;i<nodeIndices.length && start+i<CAPACITY;i++)
+		{
+			overlay.pointX[start+i]=game.getNodeXCood(nodeIndices[i]);
+			overlay.pointY[start+i]=game.getNodeYCood(nodeIndices[i]);
+			overlay.pointColor[start+i]=rgb;
+		}
+
+		overlay.writers.decrementAndGet();
+	}
+
+	static void addLines(Game game,Color color,int[] fromNodeIndices,int[] toNodeIndices)
+	{
+		DebugOverlay overlay=acquire();
+		int start=overlay.lines.getAndAdd(fromNodeIndices.length);
+		int rgb=color.getRGB();
+
+		for(int i=0;i<fromNodeIndices.length && start+i<CAPACITY;i++)
+			overlay.setLine(start+i,game,fromNodeIndices[i],toNodeIndices[i],rgb);
+
+		overlay.writers.decrementAndGet();
+	}
+
+	static void addLine(Game game,Color color,int fromNodeIndex,int toNodeIndex)
+	{
+		DebugOverlay overlay=acquire();
+		int index=overlay.lines.getAndIncrement();
+
+		if(index<CAPACITY)
+			overlay.setLine(index,game,fromNodeIndex,toNodeIndex,color.getRGB());
+
+		overlay.writers.decrementAndGet();
+	}
+
+	/**
+	 * Makes the given overlay the current one, once cleared, and returns the previous one after
+	 * any additions to it have finished. Called by the game loop when it publishes a frame.
+	 *
+	 * @param empty The overlay to draw into next; null for a new one
+	 * @return The overlay drawn so far
+	 */
+	static DebugOverlay swap(DebugOverlay empty)
+	{
+		if(empty==null)
+			empty=new DebugOverlay();
+
+		empty.points.set(0);
+		empty.lines.set(0);
+
+		DebugOverlay full=current.getAndSet(empty);
+
+		while(full.writers.get()!=0)
+			Thread.onSpinWait();
+
+		return full;
+	}
+
+	int getPointCount()
+	{
+		return Math.min(points.get(),CAPACITY);
+	}
+
+	int getLineCount()
+	{
+		return Math.min(lines.get(),CAPACITY);
+	}
+
+	//register as a writer of the current overlay; retried if it was swapped out in the meantime
+	private static DebugOverlay acquire()
+	{
+		while(true)
+		{
+			DebugOverlay overlay=current.get();
+			overlay.writers.incrementAndGet();
+
+			if(current.get()==overlay)
+				return overlay;
+
+			overlay.writers.decrementAndGet();
+		}
+	}
+
+	private void setLine(int index,Game game,int fromNodeIndex,int toNodeIndex,int rgb)
+	{
+		lineX1[index]=game.getNodeXCood(fromNodeIndex);
+		lineY1[index]=game.getNodeYCood(fromNodeIndex);
+		lineX2[index]=game.getNodeXCood(toNodeIndex);
+		lineY2[index]=game.getNodeYCood(toNodeIndex);
+		lineColor[index]=rgb;
+	}
+}
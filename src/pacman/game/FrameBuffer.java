@@ -0,0 +1,56 @@
+package pacman.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A triple buffer of frames between the game loop (the only writer) and the thread that draws
+ * them (the only reader). The writer fills the back frame and publishes it by swapping it with
+ * the middle one; the reader takes the middle frame, if it is newer than the one it has, by
+ * swapping it with its front frame. Neither side ever waits for the other or allocates: the
+ * writer may publish many frames between two reads (the reader only sees the latest), and the
+ * reader may draw the same frame several times.
+ */
+final class FrameBuffer
+{
+	private static final int FRESH=4;	//set in middle when it holds a frame the reader has not taken
+
+	private final ViewFrame[] frames;
+	private final AtomicInteger middle;	//index of the middle frame, plus FRESH
+	private int back,front;				//owned by the writer and the reader, respectively
+
+	FrameBuffer()
+	{
+		frames=new ViewFrame[]{new ViewFrame(),new ViewFrame(),new ViewFrame()};
+		back=0;
+		middle=new AtomicInteger(1);
+		front=2;
+	}
+
+	/**
+	 * Captures the game, and what the controllers drew since the previous call (see DebugOverlay),
+	 * into the back frame and publishes it. Called by the writer only.
+	 *
+	 * @param game The game
+	 */
+	void publish(Game game)
+	{
+		ViewFrame frame=frames[back];
+		frame.capture(game);
+		frame.overlay=DebugOverlay.swap(frame.overlay);
+		back=middle.getAndSet(back|FRESH)&~FRESH;
+	}
+
+	/**
+	 * Takes the latest published frame. Called by the reader only.
+	 *
+	 * @return The latest frame, or null if none was published since the last call
+	 */
+	ViewFrame acquire()
+	{
+		if((middle.get()&FRESH)==0)
+			return null;
+
+		front=middle.getAndSet(front)&~FRESH;
+		return frames[front];
+	}
+}
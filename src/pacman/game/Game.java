@@ -10,6 +10,7 @@ import pacman.game.internal.Maze;
 import pacman.game.internal.Node;
 import pacman.game.internal.PacMan;
 import pacman.game.internal.PathsCache;
+import pacman.jfr.GameAdvanceEvent;
 
 import javax.xml.crypto.dsig.keyinfo.KeyValue;
 
@@ -41,7 +42,7 @@ import static pacman.game.Constants.*;
  * accurate. We use the pre-computed shortest path distances as admissable
  * heuristic so it is very efficient.
  */
-public final class Game {
+public final class Game implements ReadOnlyGame {
 	// pills stored as bitsets for efficient copying
 	private BitSet pills, powerPills;
 	// all the game"s variables
@@ -75,6 +76,12 @@ public final class Game {
 	private Random rnd;
 	private long seed;
 
+	// draws the global reversal events if set (see setReversalSeed()); Math.random() otherwise
+	private Random reversalRnd;
+
+	// set on snapshots shared between controllers: the state may be read but not changed
+	private boolean readOnly;
+
 	// ///////////////////////////////////////////////////////////////////////////
 	// ///////////////// Constructors and initialisers /////////////////////////
 	// ///////////////////////////////////////////////////////////////////////////
@@ -258,6 +265,8 @@ public final class Game {
 	 *            The game state represented as a string
 	 */
 	public void setGameState(String gameState) {
+		_checkWritable();
+
 		String[] values = gameState.split(",");
 
 		int index = 0;
@@ -308,6 +317,106 @@ public final class Game {
 		powerPillWasEaten = Boolean.parseBoolean(values[++index]);
 	}
 
+	/**
+	 * Number of values in the state vector, see getStateVector().
+	 */
+	public static final int STATE_VECTOR_LENGTH = 9 + 4 * NUM_GHOSTS + 5;
+
+	/**
+	 * Writes the game state as a vector of ints: the same information as
+	 * getGameState(), except for the pills, in the same order (mazeIndex,
+	 * totalTime, score, currentLevelTime, levelCount, Ms Pac-Man's node, last
+	 * move, lives and extra life, each ghost's node, edible time, lair time
+	 * and last move, the time of the last global reversal, whether Ms Pac-Man
+	 * was eaten, the ghosts eaten as a bit mask, and whether a pill and a power
+	 * pill were eaten). Moves are stored as ordinals and booleans as 0 or 1.
+	 * Used by the binary replays, which encode the differences between
+	 * consecutive vectors.
+	 * 
+	 * @param state
+	 *            The array to fill, of length STATE_VECTOR_LENGTH
+	 */
+	public void getStateVector(int[] state) {
+		int index = 0;
+
+		state[index++] = mazeIndex;
+		state[index++] = totalTime;
+		state[index++] = score;
+		state[index++] = currentLevelTime;
+		state[index++] = levelCount;
+		state[index++] = pacman.currentNodeIndex;
+		state[index++] = pacman.lastMoveMade.ordinal();
+		state[index++] = pacman.numberOfLivesRemaining;
+		state[index++] = pacman.hasReceivedExtraLife ? 1 : 0;
+
+		int eaten = 0;
+
+		for (GHOST ghostType : GHOST.values()) {
+			Ghost ghost = ghosts.get(ghostType);
+			state[index++] = ghost.currentNodeIndex;
+			state[index++] = ghost.edibleTime;
+			state[index++] = ghost.lairTime;
+			state[index++] = ghost.lastMoveMade.ordinal();
+
+			if (ghostsEaten.get(ghostType))
+				eaten |= 1 << ghostType.ordinal();
+		}
+
+		state[index++] = timeOfLastGlobalReversal;
+		state[index++] = pacmanWasEaten ? 1 : 0;
+		state[index++] = eaten;
+		state[index++] = pillWasEaten ? 1 : 0;
+		state[index++] = powerPillWasEaten ? 1 : 0;
+	}
+
+	/**
+	 * Sets the game state from a state vector (see getStateVector()) and the
+	 * pills still available: the binary counterpart of setGameState(String).
+	 * 
+	 * @param state
+	 *            The state vector
+	 * @param activePills
+	 *            The pills still available, by pill index
+	 * @param activePowerPills
+	 *            The power pills still available, by power pill index
+	 */
+	public void setStateVector(int[] state, BitSet activePills, BitSet activePowerPills) {
+		_checkWritable();
+
+		MOVE[] moves = MOVE.values();
+		int index = 0;
+
+		mazeIndex = state[index++];
+		totalTime = state[index++];
+		score = state[index++];
+		currentLevelTime = state[index++];
+		levelCount = state[index++];
+
+		pacman = new PacMan(state[index++], moves[state[index++]], state[index++], state[index++] != 0);
+
+		ghosts = new EnumMap<GHOST, Ghost>(GHOST.class);
+
+		for (GHOST ghostType : GHOST.values())
+			ghosts.put(ghostType, new Ghost(ghostType, state[index++], state[index++], state[index++],
+					moves[state[index++]]));
+
+		currentMaze = mazes[mazeIndex];
+		pills = (BitSet) activePills.clone();
+		powerPills = (BitSet) activePowerPills.clone();
+
+		timeOfLastGlobalReversal = state[index++];
+		pacmanWasEaten = state[index++] != 0;
+
+		int eaten = state[index++];
+		ghostsEaten = new EnumMap<GHOST, Boolean>(GHOST.class);
+
+		for (GHOST ghost : GHOST.values())
+			ghostsEaten.put(ghost, (eaten & (1 << ghost.ordinal())) != 0);
+
+		pillWasEaten = state[index++] != 0;
+		powerPillWasEaten = state[index++] != 0;
+	}
+
 	/**
 	 * Returns an exact copy of the game. This may be used for forward searches
 	 * such as minimax. The copying is relatively efficient.
@@ -346,6 +455,65 @@ public final class Game {
 		return copy;
 	}
 
+	/**
+	 * Returns a read-only copy of the game. The executor creates one snapshot per
+	 * time step and hands the same one to both controllers: methods that would
+	 * change the state throw an IllegalStateException, so neither controller can
+	 * affect what the other sees. Controllers that want to simulate forward call
+	 * copy() on the snapshot, which returns an ordinary, mutable game.
+	 * 
+	 * @return a read-only copy of the game
+	 */
+	public Game snapshot() {
+		Game snapshot = copy();
+		snapshot.readOnly = true;
+		return snapshot;
+	}
+
+	/**
+	 * Makes the global reversal events of this game reproducible: they are
+	 * drawn from a pseudo-random number generator with the given seed instead
+	 * of Math.random(). Copies of the game, and thus the forward searches of the
+	 * controllers, still use Math.random(), so the events remain unpredictable
+	 * to them.
+	 * 
+	 * @param reversalSeed
+	 *            The seed for the global reversal events
+	 */
+	public void setReversalSeed(long reversalSeed) {
+		reversalRnd = new Random(reversalSeed);
+	}
+
+	/**
+	 * Whether this game is a read-only snapshot (see snapshot()).
+	 * 
+	 * @return true, if the game state cannot be changed
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Commits the flight recorder event of a call to advanceGame, if it is enabled.
+	 */
+	private void _commitAdvance(GameAdvanceEvent event) {
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.tick = totalTime;
+			event.maze = mazeIndex;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Guards the methods that change the game state against use on a snapshot.
+	 */
+	private void _checkWritable() {
+		if (readOnly)
+			throw new IllegalStateException("Game snapshot is read-only; use copy() to simulate forward");
+	}
+
 	// ///////////////////////////////////////////////////////////////////////////
 	// ///////////////////////// Game-engine //////////////////////////////////
 	// ///////////////////////////////////////////////////////////////////////////
@@ -361,24 +529,47 @@ public final class Game {
 	 *            The moves supplied by the ghosts controller
 	 */
 	public void advanceGame(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
+		GameAdvanceEvent event = new GameAdvanceEvent();
+		event.begin();
+
 		updatePacMan(pacManMove);
 		updateGhosts(ghostMoves);
 		updateGame();
+		_commitAdvance(event);
 	}
 
 	public void advanceGameWithoutReverse(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
+		GameAdvanceEvent event = new GameAdvanceEvent();
+		event.begin();
+
 		updatePacMan(pacManMove);
 		updateGhostsWithoutReverse(ghostMoves);
 		updateGame();
+		_commitAdvance(event);
 	}
 
 	public void advanceGameWithForcedReverse(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
+		GameAdvanceEvent event = new GameAdvanceEvent();
+		event.begin();
+
 		updatePacMan(pacManMove);
 		updateGhostsWithForcedReverse(ghostMoves);
 		updateGame();
+		_commitAdvance(event);
 	}
 
 	public void advanceGameWithPowerPillReverseOnly(MOVE pacManMove, EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
+		GameAdvanceEvent event = new GameAdvanceEvent();
+		event.begin();
+
 		updatePacMan(pacManMove);
 
 		if (powerPillWasEaten)
@@ -387,6 +578,7 @@ public final class Game {
 			updateGhostsWithoutReverse(ghostMoves);
 
 		updateGame();
+		_commitAdvance(event);
 	}
 
 	/**
@@ -397,6 +589,8 @@ public final class Game {
 	 *            The move supplied by the Ms Pac-Man controller
 	 */
 	public void updatePacMan(MOVE pacManMove) {
+		_checkWritable();
+
 		_updatePacMan(pacManMove); // move pac-man
 		_eatPill(); // eat a pill
 		_eatPowerPill(); // eat a power pill
@@ -410,6 +604,8 @@ public final class Game {
 	 *            The moves supplied by the ghosts controller
 	 */
 	public void updateGhosts(EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
 		ghostMoves = _completeGhostMoves(ghostMoves);
 
 		if (!_reverseGhosts(ghostMoves, false))
@@ -417,11 +613,15 @@ public final class Game {
 	}
 
 	public void updateGhostsWithoutReverse(EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
 		ghostMoves = _completeGhostMoves(ghostMoves);
 		_updateGhosts(ghostMoves);
 	}
 
 	public void updateGhostsWithForcedReverse(EnumMap<GHOST, MOVE> ghostMoves) {
+		_checkWritable();
+
 		ghostMoves = _completeGhostMoves(ghostMoves);
 		_reverseGhosts(ghostMoves, true);
 	}
@@ -433,6 +633,8 @@ public final class Game {
 	 * the level or game is over.
 	 */
 	public void updateGame() {
+		_checkWritable();
+
 		_feast(); // ghosts eat pac-man or vice versa
 		_updateLairTimes();
 		_updatePacManExtraLife();
@@ -461,6 +663,8 @@ public final class Game {
 	 */
 	public void updateGame(boolean feast, boolean updateLairTimes, boolean updateExtraLife,
 			boolean updateTotalTime, boolean updateLevelTime) {
+		_checkWritable();
+
 		if (feast)
 			_feast(); // ghosts eat pac-man or vice versa
 		if (updateLairTimes)
@@ -649,7 +853,7 @@ public final class Game {
 		boolean reversed = false;
 		boolean globalReverse = false;
 
-		if (Math.random() < GHOST_REVERSAL)
+		if ((reversalRnd == null ? Math.random() : reversalRnd.nextDouble()) < GHOST_REVERSAL)
 			globalReverse = true;
 
 		for (Entry<GHOST, MOVE> entry : moves.entrySet()) {
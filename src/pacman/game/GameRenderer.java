@@ -0,0 +1,367 @@
+package pacman.game;
+
+import javax.imageio.ImageIO;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.EnumMap;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Draws game states into an image of its own, without any window: it is used by the game view and
+ * also works headless (with java.awt.headless=true), for instance to export replays as images
+ * (see FrameExporter). The maze and the pills are kept in a separate layer that is only redrawn
+ * completely when the maze changes; otherwise just the pills eaten (or restored) since the
+ * previous frame are updated, and each frame starts with a copy of the layer. Consecutive states
+ * of the same game are therefore the cheapest to draw. The sprites are loaded once and shared by
+ * all renderers; a renderer itself must only be used by one thread at a time.
+ */
+public final class GameRenderer
+{
+	private static Images images;
+
+	private final BufferedImage image,layer;
+	private final Graphics2D graphics,layerGraphics;
+	private final BitSet layerPills,layerPowerPills,changed;
+	private final ViewFrame frame;
+	private int layerMaze;
+	private MOVE lastPacManMove;
+
+	/**
+	 * Creates a renderer with its own image.
+	 */
+	public GameRenderer()
+	{
+		image=new BufferedImage(GV_WIDTH*MAG,GV_HEIGHT*MAG+20,BufferedImage.TYPE_INT_RGB);
+		layer=new BufferedImage(GV_WIDTH*MAG,GV_HEIGHT*MAG+20,BufferedImage.TYPE_INT_RGB);
+		graphics=image.createGraphics();
+		layerGraphics=layer.createGraphics();
+		layerPills=new BitSet();
+		layerPowerPills=new BitSet();
+		changed=new BitSet();
+		frame=new ViewFrame();
+		layerMaze=-1;
+		lastPacManMove=MOVE.LEFT;
+
+		synchronized(GameRenderer.class)
+		{
+			if(images==null)
+				images=new Images();
+		}
+	}
+
+	/**
+	 * Returns the image the frames are drawn into.
+	 *
+	 * @return The image
+	 */
+	public BufferedImage getImage()
+	{
+		return image;
+	}
+
+	/**
+	 * Draws the current state of a game. The image returned is reused by the next call.
+	 *
+	 * @param game The game
+	 * @return The image
+	 */
+	public BufferedImage render(Game game)
+	{
+		frame.capture(game);
+		return render(frame);
+	}
+
+	/**
+	 * Draws a complete frame.
+	 *
+	 * @param frame The frame
+	 * @return The image
+	 */
+	BufferedImage render(ViewFrame frame)
+	{
+		drawMaze(frame);
+
+		if(frame.overlay!=null)
+			drawOverlay(frame.overlay);
+
+		drawSprites(frame);
+
+		return image;
+	}
+
+	/**
+	 * Draws the maze and the pills of the frame.
+	 *
+	 * @param frame The frame
+	 */
+	private void drawMaze(ViewFrame frame)
+	{
+		if(frame.mazeIndex!=layerMaze)
+			redrawLayer(frame);
+		else
+		{
+			updatePills(frame.pills,layerPills,frame.pillPositions,false);
+			updatePills(frame.powerPills,layerPowerPills,frame.powerPillPositions,true);
+		}
+
+		graphics.drawImage(layer,0,0,null);
+	}
+
+	/**
+	 * Draws Ms Pac-Man, the ghosts, the lives and the game info of the frame.
+	 *
+	 * @param frame The frame
+	 */
+	private void drawSprites(ViewFrame frame)
+	{
+		drawPacMan(frame);
+		drawGhosts(frame);
+		drawLives(frame);
+		drawGameInfo(frame);
+
+		if(frame.gameOver)
+			drawGameOver();
+	}
+
+	private void redrawLayer(ViewFrame frame)
+	{
+		layerGraphics.setColor(Color.BLACK);
+		layerGraphics.fillRect(0,0,GV_WIDTH*MAG,GV_HEIGHT*MAG+20);
+		layerGraphics.drawImage(images.getMaze(frame.mazeIndex),2,6,null);
+		layerGraphics.setColor(Color.WHITE);
+
+		layerPills.clear();
+		layerPills.or(frame.pills);
+		layerPowerPills.clear();
+		layerPowerPills.or(frame.powerPills);
+
+		for(int i=layerPills.nextSetBit(0);i>=0;i=layerPills.nextSetBit(i+1))
+			drawPill(frame.pillPositions,i,false);
+
+		for(int i=layerPowerPills.nextSetBit(0);i>=0;i=layerPowerPills.nextSetBit(i+1))
+			drawPill(frame.powerPillPositions,i,true);
+
+		layerMaze=frame.mazeIndex;
+	}
+
+	//update the pills of the layer whose availability differs from the frame
+	private void updatePills(BitSet pills,BitSet shown,int[] positions,boolean power)
+	{
+		changed.clear();
+		changed.or(shown);
+		changed.xor(pills);
+
+		for(int i=changed.nextSetBit(0);i>=0;i=changed.nextSetBit(i+1))
+		{
+			if(pills.get(i))
+			{
+				layerGraphics.setColor(Color.WHITE);
+				drawPill(positions,i,power);
+			}
+			else
+				erasePill(positions,i,power);
+		}
+
+		shown.xor(changed);
+	}
+
+	private void drawPill(int[] positions,int index,boolean power)
+	{
+		int x=positions[2*index]*MAG,y=positions[2*index+1]*MAG;
+
+		if(power)
+			layerGraphics.fillOval(x+1,y+5,8,8);
+		else
+			layerGraphics.fillOval(x+4,y+8,3,3);
+	}
+
+	//restore the maze underneath the pill
+	private void erasePill(int[] positions,int index,boolean power)
+	{
+		int x=positions[2*index]*MAG,y=positions[2*index+1]*MAG;
+
+		if(power)
+			layerGraphics.setClip(x+1,y+5,8,8);
+		else
+			layerGraphics.setClip(x+4,y+8,3,3);
+
+		layerGraphics.setColor(Color.BLACK);
+		layerGraphics.fillRect(0,0,GV_WIDTH*MAG,GV_HEIGHT*MAG+20);
+		layerGraphics.drawImage(images.getMaze(layerMaze),2,6,null);
+		layerGraphics.setClip(null);
+	}
+
+	//the points and lines the controllers drew, between the maze and the sprites
+	private void drawOverlay(DebugOverlay overlay)
+	{
+		Color color=null;	//only create a colour when it changes
+
+		for(int i=0;i<overlay.getPointCount();i++)
+		{
+			if(color==null || overlay.pointColor[i]!=color.getRGB())
+				graphics.setColor(color=new Color(overlay.pointColor[i],true));
+
+			graphics.fillRect(overlay.pointX[i]*MAG+1,overlay.pointY[i]*MAG+5,10,10);
+		}
+
+		for(int i=0;i<overlay.getLineCount();i++)
+		{
+			if(color==null || overlay.lineColor[i]!=color.getRGB())
+				graphics.setColor(color=new Color(overlay.lineColor[i],true));
+
+			graphics.drawLine(overlay.lineX1[i]*MAG+5,overlay.lineY1[i]*MAG+10,overlay.lineX2[i]*MAG+5,overlay.lineY2[i]*MAG+10);
+		}
+	}
+
+	private void drawPacMan(ViewFrame frame)
+	{
+		if(frame.pacManMove!=MOVE.NEUTRAL)
+			lastPacManMove=frame.pacManMove;
+
+		graphics.drawImage(images.getPacMan(lastPacManMove,frame.totalTime),frame.pacManX*MAG-1,frame.pacManY*MAG+3,null);
+	}
+
+	private void drawGhosts(ViewFrame frame)
+	{
+		int time=frame.totalTime;
+
+		for(GHOST ghostType : GHOST.values())
+		{
+			int index=ghostType.ordinal();
+			int x=frame.ghostX[index]*MAG-1;
+			int y=frame.ghostY[index]*MAG+3;
+
+			if(frame.edibleTime[index]>0)
+			{
+				if(frame.edibleTime[index]<EDIBLE_ALERT && ((time%6)/3)==0)
+					graphics.drawImage(images.getEdibleGhost(true,time),x,y,null);
+				else
+					graphics.drawImage(images.getEdibleGhost(false,time),x,y,null);
+			}
+			else if(frame.lairTime[index]>0)
+				graphics.drawImage(images.getGhost(ghostType,frame.ghostMove[index],time),x+(index*5),y,null);
+			else
+				graphics.drawImage(images.getGhost(ghostType,frame.ghostMove[index],time),x,y,null);
+		}
+	}
+
+	private void drawLives(ViewFrame frame)
+	{
+		for(int i=0;i<frame.lives-1;i++) //-1 as lives remaining includes the current life
+			graphics.drawImage(images.getPacManForExtraLives(),210-(30*i)/2,260,null);
+	}
+
+	private void drawGameInfo(ViewFrame frame)
+	{
+		graphics.setColor(Color.WHITE);
+		graphics.drawString("S: ",4,271);
+		graphics.drawString(""+frame.score,16,271);
+		graphics.drawString("L: ",78,271);
+		graphics.drawString(""+(frame.level+1),90,271);
+		graphics.drawString("T: ",116,271);
+		graphics.drawString(""+frame.levelTime,129,271);
+	}
+
+	private void drawGameOver()
+	{
+		graphics.setColor(Color.WHITE);
+		graphics.drawString("Game Over",80,150);
+	}
+
+	private static class Images
+	{
+		private EnumMap<MOVE,BufferedImage[]> pacman;
+		private EnumMap<GHOST,EnumMap<MOVE,BufferedImage[]>> ghosts;
+		private BufferedImage[] edibleGhosts,edibleBlinkingGhosts,mazes;
+
+		public Images()
+		{
+			pacman=new EnumMap<MOVE,BufferedImage[]>(MOVE.class);
+
+			for(MOVE move : new MOVE[]{MOVE.UP,MOVE.RIGHT,MOVE.DOWN,MOVE.LEFT})
+			{
+				String name="mspacman-"+move.toString().toLowerCase();
+				pacman.put(move,new BufferedImage[]{_loadImage(name+"-normal.png"),_loadImage(name+"-open.png"),_loadImage(name+"-closed.png")});
+			}
+
+			ghosts=new EnumMap<GHOST,EnumMap<MOVE,BufferedImage[]>>(GHOST.class);
+
+			for(GHOST ghostType : GHOST.values())
+			{
+				ghosts.put(ghostType,new EnumMap<MOVE,BufferedImage[]>(MOVE.class));
+
+				for(MOVE move : new MOVE[]{MOVE.UP,MOVE.RIGHT,MOVE.DOWN,MOVE.LEFT})
+				{
+					String name=ghostType.toString().toLowerCase()+"-"+move.toString().toLowerCase();
+					ghosts.get(ghostType).put(move,new BufferedImage[]{_loadImage(name+"-1.png"),_loadImage(name+"-2.png")});
+				}
+			}
+
+			edibleGhosts=new BufferedImage[2];
+			edibleGhosts[0]=_loadImage("edible-ghost-1.png");
+			edibleGhosts[1]=_loadImage("edible-ghost-2.png");
+
+			edibleBlinkingGhosts=new BufferedImage[2];
+			edibleBlinkingGhosts[0]=_loadImage("edible-ghost-blink-1.png");
+			edibleBlinkingGhosts[1]=_loadImage("edible-ghost-blink-2.png");
+
+			mazes=new BufferedImage[4];
+			for(int i=0;i<mazes.length;i++)
+				mazes[i]=_loadImage(mazeNames[i]);
+		}
+
+		public BufferedImage getPacMan(MOVE move,int time)
+		{
+			return pacman.get(move)[(time%6)/2];
+		}
+
+		public BufferedImage getPacManForExtraLives()
+		{
+			return pacman.get(MOVE.RIGHT)[0];
+		}
+
+		public BufferedImage getGhost(GHOST ghost,MOVE move,int time)
+		{
+			if(move==MOVE.NEUTRAL)
+				return ghosts.get(ghost).get(MOVE.UP)[(time%6)/3];
+			else
+				return ghosts.get(ghost).get(move)[(time%6)/3];
+		}
+
+		public BufferedImage getEdibleGhost(boolean blinking,int time)
+		{
+			if(!blinking)
+				return edibleGhosts[(time%6)/3];
+			else
+				return edibleBlinkingGhosts[(time%6)/3];
+		}
+
+		public BufferedImage getMaze(int mazeIndex)
+		{
+			return mazes[mazeIndex];
+		}
+
+		private BufferedImage _loadImage(String fileName)
+		{
+			BufferedImage image=null;
+
+			try
+			{
+				image=ImageIO.read(new File(pathImages+System.getProperty("file.separator")+fileName));
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+
+			return image;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package pacman.game;
+
+import java.util.ArrayList;
+
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.internal.Maze;
+
+/**
+ * The query side of the game: every method here only reads the game state. Game implements it, and
+ * Game.snapshot() returns a game that supports nothing more, so the executor can hand the same
+ * snapshot to both controllers each time step instead of a private copy to each. A controller that
+ * wants to simulate forward calls copy() to materialise a mutable game of its own; purely reactive
+ * controllers never copy at all.
+ *
+ * See Game for the documentation of the individual methods.
+ */
+public interface ReadOnlyGame
+{
+	// ///////////////////////////////////////////////////////////////////////////
+	// ////////////////////////// Copies and state ////////////////////////////
+	// ///////////////////////////////////////////////////////////////////////////
+
+	Game copy();
+
+	String getGameState();
+
+	boolean isReadOnly();
+
+	// ///////////////////////////////////////////////////////////////////////////
+	// ///////////////////////// Last time step ///////////////////////////////
+	// ///////////////////////////////////////////////////////////////////////////
+
+	boolean wasPacManEaten();
+
+	boolean wasGhostEaten(GHOST ghost);
+
+	int getNumGhostsEaten();
+
+	boolean wasPillEaten();
+
+	boolean wasPowerPillEaten();
+
+	int getTimeOfLastGlobalReversal();
+
+	boolean gameOver();
+
+	// ///////////////////////////////////////////////////////////////////////////
+	// ////////////////////////// Maze and level //////////////////////////////
+	// ///////////////////////////////////////////////////////////////////////////
+
+	Maze getCurrentMaze();
+
+	int getNodeXCood(int nodeIndex);
+
+	int getNodeYCood(int nodeIndex);
+
+	int getMazeIndex();
+
+	int getCurrentLevel();
+
+	int getNumberOfNodes();
+
+	int getGhostCurrentEdibleScore();
+
+	int getGhostInitialNodeIndex();
+
+	boolean isPillStillAvailable(int pillIndex);
+
+	boolean isPowerPillStillAvailable(int powerPillIndex);
+
+	int getPillIndex(int nodeIndex);
+
+	int getPowerPillIndex(int nodeIndex);
+
+	int[] getJunctionIndices();
+
+	int[] getPillIndices();
+
+	int[] getPowerPillIndices();
+
+	int getScore();
+
+	int getCurrentLevelTime();
+
+	int getTotalTime();
+
+	int getNumberOfPills();
+
+	int getNumberOfPowerPills();
+
+	int getNumberOfActivePills();
+
+	int getNumberOfActivePowerPills();
+
+	int[] getActivePillsIndices();
+
+	int[] getActivePowerPillsIndices();
+
+	// ///////////////////////////////////////////////////////////////////////////
+	// ///////////////////////// Pac-Man and ghosts ///////////////////////////
+	// ///////////////////////////////////////////////////////////////////////////
+
+	int getPacmanCurrentNodeIndex();
+
+	MOVE getPacmanLastMoveMade();
+
+	int getPacmanNumberOfLivesRemaining();
+
+	int getGhostCurrentNodeIndex(GHOST ghostType);
+
+	MOVE getGhostLastMoveMade(GHOST ghostType);
+
+	int getGhostEdibleTime(GHOST ghostType);
+
+	boolean isGhostEdible(GHOST ghostType);
+
+	int getGhostLairTime(GHOST ghostType);
+
+	boolean doesGhostRequireAction(GHOST ghostType);
+
+	ArrayList<GHOST> getGhosts();
+
+	// ///////////////////////////////////////////////////////////////////////////
+	// /////////////////////// Graph and distances ////////////////////////////
+	// ///////////////////////////////////////////////////////////////////////////
+
+	boolean isJunction(int nodeIndex);
+
+	MOVE[] getPossibleMoves(int nodeIndex);
+
+	MOVE[] getPossibleMoves(int nodeIndex, MOVE lastModeMade);
+
+	int[] getNeighbouringNodes(int nodeIndex);
+
+	int[] getNeighbouringNodes(int nodeIndex, MOVE lastModeMade);
+
+	int getNeighbour(int nodeIndex, MOVE moveToBeMade);
+
+	MOVE getMoveToMakeToReachDirectNeighbour(int currentNodeIndex, int neighbourNodeIndex);
+
+	int getShortestPathDistance(int fromNodeIndex, int toNodeIndex);
+
+	int getShortestPathDistance(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade);
+
+	double getEuclideanDistance(int fromNodeIndex, int toNodeIndex);
+
+	int getManhattanDistance(int fromNodeIndex, int toNodeIndex);
+
+	double getDistance(int fromNodeIndex, int toNodeIndex, DM distanceMeasure);
+
+	double getDistance(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure);
+
+	int getClosestNodeIndexFromNodeIndex(int fromNodeIndex, int[] targetNodeIndices, DM distanceMeasure);
+
+	int getFarthestNodeIndexFromNodeIndex(int fromNodeIndex, int[] targetNodeIndices, DM distanceMeasure);
+
+	MOVE getNextMoveTowardsTarget(int fromNodeIndex, int toNodeIndex, DM distanceMeasure);
+
+	MOVE getNextMoveAwayFromTarget(int fromNodeIndex, int toNodeIndex, DM distanceMeasure);
+
+	MOVE getNextMoveTowardsTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure);
+
+	MOVE getNextMoveAwayFromTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure);
+
+	MOVE getApproximateNextMoveTowardsTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure);
+
+	MOVE getApproximateNextMoveAwayFromTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure);
+
+	int[] getShortestPath(int fromNodeIndex, int toNodeIndex);
+
+	int[] getShortestPath(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade);
+}
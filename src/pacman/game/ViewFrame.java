@@ -0,0 +1,122 @@
+package pacman.game;
+
+import java.util.BitSet;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Everything the game view draws for one time step, copied out of the game so that the frame can
+ * be drawn on another thread while the game continues. Positions are stored in maze coordinates
+ * (as returned by Game.getNodeXCood() and getNodeYCood()). Frames are reused: the game loop fills
+ * one with capture() and publishes it through a FrameBuffer; once published it is not changed
+ * until the view has moved on to a newer frame.
+ */
+final class ViewFrame
+{
+	//the positions of the pills and power pills of each maze, as x,y pairs; computed once per maze
+	private static final int[][] pillPositionsOfMaze=new int[NUM_MAZES][];
+	private static final int[][] powerPillPositionsOfMaze=new int[NUM_MAZES][];
+
+	int mazeIndex,totalTime,score,level,levelTime,lives;
+	boolean gameOver;
+
+	int pacManX,pacManY;
+	MOVE pacManMove;
+
+	final int[] ghostX,ghostY,edibleTime,lairTime;
+	final MOVE[] ghostMove;
+
+	final BitSet pills,powerPills;
+	int[] pillPositions,powerPillPositions;
+
+	DebugOverlay overlay;	//what the controllers drew for this frame, if anything
+
+	ViewFrame()
+	{
+		ghostX=new int[NUM_GHOSTS];
+		ghostY=new int[NUM_GHOSTS];
+		edibleTime=new int[NUM_GHOSTS];
+		lairTime=new int[NUM_GHOSTS];
+		ghostMove=new MOVE[NUM_GHOSTS];
+		pills=new BitSet();
+		powerPills=new BitSet();
+	}
+
+	/**
+	 * Copies the current state of the game into the frame.
+	 *
+	 * @param game The game
+	 */
+	void capture(Game game)
+	{
+		int previousMaze=mazeIndex;
+		mazeIndex=game.getMazeIndex();
+		totalTime=game.getTotalTime();
+		score=game.getScore();
+		level=game.getCurrentLevel();
+		levelTime=game.getCurrentLevelTime();
+		lives=game.getPacmanNumberOfLivesRemaining();
+		gameOver=game.gameOver();
+
+		int pacManNode=game.getPacmanCurrentNodeIndex();
+		pacManX=game.getNodeXCood(pacManNode);
+		pacManY=game.getNodeYCood(pacManNode);
+		pacManMove=game.getPacmanLastMoveMade();
+
+		for(GHOST ghostType : GHOST.values())
+		{
+			int index=ghostType.ordinal();
+			int node=game.getGhostCurrentNodeIndex(ghostType);
+
+			ghostX[index]=game.getNodeXCood(node);
+			ghostY[index]=game.getNodeYCood(node);
+			edibleTime[index]=game.getGhostEdibleTime(ghostType);
+			lairTime[index]=game.getGhostLairTime(ghostType);
+			ghostMove[index]=game.getGhostLastMoveMade(ghostType);
+		}
+
+		//frames may be captured on several threads (see FrameExporter), so the shared positions are
+		//looked up under the lock, but only when the maze changes
+		if(pillPositions==null || mazeIndex!=previousMaze)
+		{
+			synchronized(ViewFrame.class)
+			{
+				if(pillPositionsOfMaze[mazeIndex]==null)
+				{
+					pillPositionsOfMaze[mazeIndex]=positions(game,game.getPillIndices());
+					powerPillPositionsOfMaze[mazeIndex]=positions(game,game.getPowerPillIndices());
+				}
+
+				pillPositions=pillPositionsOfMaze[mazeIndex];
+				powerPillPositions=powerPillPositionsOfMaze[mazeIndex];
+			}
+		}
+
+		pills.clear();
+		powerPills.clear();
+
+		for(int i=0;i<game.getNumberOfPills();i++)
+			if(game.isPillStillAvailable(i))
+				pills.set(i);
+
+		for(int i=0;i<game.getNumberOfPowerPills();i++)
+			if(game.isPowerPillStillAvailable(i))
+				powerPills.set(i);
+	}
+
+	private static int[] positions(Game game,int[] nodeIndices)
+	{
+		int[] positions=new int[2*nodeIndices.length];
+
+		for(int i=0;i<nodeIndices.length;i++)
+		{
+			positions[2*i]=game.getNodeXCood(nodeIndices[i]);
+			positions[2*i+1]=game.getNodeYCood(nodeIndices[i]);
+		}
+
+		return positions;
+	}
+}
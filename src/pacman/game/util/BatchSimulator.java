@@ -0,0 +1,789 @@
+package pacman.game.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Random;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.Legacy;
+import pacman.controllers.examples.NearestPillPacMan;
+import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.examples.RandomPacMan;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.game.Game;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Simulates many games in lock step, with the rules of Game.advanceGame(), for self-play and
+ * learning. The games are stored as arrays of fields (one entry per game, or per game and ghost)
+ * rather than one Game object each, and the pills of each game as a bit set in a long[]. All
+ * games advance in a single call of step(), which takes the moves as ordinals of MOVE; afterwards
+ * getRewards() holds the points each game scored in the step and getDone() whether it ended. A
+ * game that ends is immediately restarted with the next seed, so the simulator always holds
+ * running games.
+ *
+ * Game i with seed s evolves exactly like new Game(s) with setReversalSeed(reversalSeed(s))
+ * given the same moves: the pseudo-random numbers are drawn from the same sequences (the
+ * generator of java.util.Random, kept as a long per game) in the same order. The main method
+ * checks this tick for tick against Game and measures the throughput of both.
+ */
+public class BatchSimulator
+{
+	public static final int UP=MOVE.UP.ordinal(),RIGHT=MOVE.RIGHT.ordinal(),DOWN=MOVE.DOWN.ordinal(),LEFT=MOVE.LEFT.ordinal(),NEUTRAL=MOVE.NEUTRAL.ordinal();
+
+	private static final int MOVES=5;
+	private static final long MULTIPLIER=0x5DEECE66DL,ADDEND=0xBL,MASK=(1L<<48)-1;	//as in java.util.Random
+	private static final long REVERSAL_SEED_OFFSET=0x9E3779B97F4A7C15L;
+
+	//the mazes as tables: neighbours[maze][node*MOVES+move] is the neighbour in that direction or -1, and
+	//possibleMoves[maze][node*MOVES+lastMove] the moves of Node.allPossibleMoves (as ordinals, in the same order)
+	private static final int[][] neighbours,pillOfNode,powerPillOfNode,distances;
+	private static final int[][][] possibleMoves;
+	private static final int[] numberOfPills,numberOfPowerPills,initialPacManNode,lairNode,initialGhostNode;
+
+	//times that depend on the level, as computed by Game, for each value of levelCount%LEVEL_RESET_REDUCTION
+	private static final int[] edibleTimes,commonLairTimes;
+	private static final int[][] initialLairTimes;
+
+	static
+	{
+		neighbours=new int[NUM_MAZES][];
+		pillOfNode=new int[NUM_MAZES][];
+		powerPillOfNode=new int[NUM_MAZES][];
+		distances=new int[NUM_MAZES][];
+		possibleMoves=new int[NUM_MAZES][][];
+		numberOfPills=new int[NUM_MAZES];
+		numberOfPowerPills=new int[NUM_MAZES];
+		initialPacManNode=new int[NUM_MAZES];
+		lairNode=new int[NUM_MAZES];
+		initialGhostNode=new int[NUM_MAZES];
+
+		for(int m=0;m<NUM_MAZES;m++)
+		{
+			Maze maze=new Game(0,m).getCurrentMaze();
+			int nodes=maze.graph.length;
+
+			neighbours[m]=new int[nodes*MOVES];
+			possibleMoves[m]=new int[nodes*MOVES][];
+			pillOfNode[m]=new int[nodes];
+			powerPillOfNode[m]=new int[nodes];
+
+			for(Node node : maze.graph)
+			{
+				for(MOVE move : MOVE.values())
+				{
+					Integer neighbour=node.neighbourhood.get(move);
+					neighbours[m][node.nodeIndex*MOVES+move.ordinal()]=neighbour==null ? -1 : neighbour;
+
+					MOVE[] moves=node.allPossibleMoves.get(move);
+
+					if(moves!=null)
+					{
+						possibleMoves[m][node.nodeIndex*MOVES+move.ordinal()]=new int[moves.length];
+
+						for(int i=0;i<moves.length;i++)
+							possibleMoves[m][node.nodeIndex*MOVES+move.ordinal()][i]=moves[i].ordinal();
+					}
+				}
+
+				pillOfNode[m][node.nodeIndex]=node.pillIndex;
+				powerPillOfNode[m][node.nodeIndex]=node.powerPillIndex;
+			}
+
+			distances[m]=maze.shortestPathDistances;
+			numberOfPills[m]=maze.pillIndices.length;
+			numberOfPowerPills[m]=maze.powerPillIndices.length;
+			initialPacManNode[m]=maze.initialPacManNodeIndex;
+			lairNode[m]=maze.lairNodeIndex;
+			initialGhostNode[m]=maze.initialGhostNodeIndex;
+		}
+
+		edibleTimes=new int[LEVEL_RESET_REDUCTION];
+		commonLairTimes=new int[LEVEL_RESET_REDUCTION];
+		initialLairTimes=new int[NUM_GHOSTS][LEVEL_RESET_REDUCTION];
+
+		for(int level=0;level<LEVEL_RESET_REDUCTION;level++)
+		{
+			edibleTimes[level]=(int)(EDIBLE_TIME*(Math.pow(EDIBLE_TIME_REDUCTION,level)));
+			commonLairTimes[level]=(int)(COMMON_LAIR_TIME*(Math.pow(LAIR_REDUCTION,level)));
+
+			for(GHOST ghost : GHOST.values())
+				initialLairTimes[ghost.ordinal()][level]=(int)(ghost.initialLairTime*(Math.pow(LAIR_REDUCTION,level)));
+		}
+	}
+
+	private final int games;
+	private long nextSeed,episodes;
+
+	private final long[] seeds,random,reversalRandom;
+	private final int[] maze,totalTime,score,levelTime,levelCount,ghostEatMultiplier,timeOfLastGlobalReversal;
+	private final int[] pacManNode,pacManMove,lives;
+	private final boolean[] extraLife,pacManWasEaten,pillWasEaten,powerPillWasEaten,gameOver;
+	private final int[] ghostNode,edibleTime,lairTime,ghostMove;	//index game*NUM_GHOSTS+ghost
+	private final int[] ghostsEaten;								//bit mask by ghost ordinal
+	private final long[][] pills,powerPills;
+
+	private final int[] rewards;
+	private final boolean[] done;
+
+	/**
+	 * Creates the games, with the seeds seed, seed+1, ..., seed+games-1. The games restarted later
+	 * get the seeds that follow.
+	 *
+	 * @param games The number of games
+	 * @param seed The seed of the first game
+	 */
+	public BatchSimulator(int games,long seed)
+	{
+		this.games=games;
+
+		seeds=new long[games];
+		random=new long[games];
+		reversalRandom=new long[games];
+		maze=new int[games];
+		totalTime=new int[games];
+		score=new int[games];
+		levelTime=new int[games];
+		levelCount=new int[games];
+		ghostEatMultiplier=new int[games];
+		timeOfLastGlobalReversal=new int[games];
+		pacManNode=new int[games];
+		pacManMove=new int[games];
+		lives=new int[games];
+		extraLife=new boolean[games];
+		pacManWasEaten=new boolean[games];
+		pillWasEaten=new boolean[games];
+		powerPillWasEaten=new boolean[games];
+		gameOver=new boolean[games];
+		ghostNode=new int[games*NUM_GHOSTS];
+		edibleTime=new int[games*NUM_GHOSTS];
+		lairTime=new int[games*NUM_GHOSTS];
+		ghostMove=new int[games*NUM_GHOSTS];
+		ghostsEaten=new int[games];
+		pills=new long[games][];
+		powerPills=new long[games][];
+		rewards=new int[games];
+		done=new boolean[games];
+
+		for(int i=0;i<games;i++)
+			reset(i,seed+i);
+
+		nextSeed=seed+games;
+	}
+
+	/**
+	 * The seed of the global reversal events of a game with the given seed.
+	 *
+	 * @param seed The seed of the game
+	 * @return The seed to pass to Game.setReversalSeed() for an identical game
+	 */
+	public static long reversalSeed(long seed)
+	{
+		return seed+REVERSAL_SEED_OFFSET;
+	}
+
+	/**
+	 * Advances every game by one time step, like Game.advanceGame(). Games that end are restarted.
+	 *
+	 * @param pacManMoves The move of Ms Pac-Man in each game, as an ordinal of MOVE
+	 * @param ghostMoves The moves of the ghosts, at game*NUM_GHOSTS+ghost ordinal; null to keep
+	 * every ghost's last move (like passing null to advanceGame())
+	 */
+	public void step(int[] pacManMoves,int[] ghostMoves)
+	{
+		for(int i=0;i<games;i++)
+		{
+			int before=score[i];
+
+			updatePacMan(i,pacManMoves[i]);
+			updateGhosts(i,ghostMoves);
+			updateGame(i);
+
+			rewards[i]=score[i]-before;
+			done[i]=gameOver[i];
+
+			if(done[i])
+			{
+				episodes++;
+				reset(i,nextSeed++);
+			}
+		}
+	}
+
+	/**
+	 * Restarts a game with the given seed.
+	 *
+	 * @param i The game
+	 * @param seed The seed
+	 */
+	public void reset(int i,long seed)
+	{
+		seeds[i]=seed;
+		random[i]=(seed^MULTIPLIER)&MASK;
+		reversalRandom[i]=(reversalSeed(seed)^MULTIPLIER)&MASK;
+
+		maze[i]=0;
+		score[i]=levelTime[i]=levelCount[i]=totalTime[i]=0;
+		ghostEatMultiplier[i]=1;
+		gameOver[i]=false;
+		timeOfLastGlobalReversal[i]=-1;
+		pacManWasEaten[i]=pillWasEaten[i]=powerPillWasEaten[i]=false;
+		ghostsEaten[i]=0;
+
+		setPills(i);
+		initGhosts(i);
+
+		pacManNode[i]=initialPacManNode[maze[i]];
+		pacManMove[i]=LEFT;
+		lives[i]=NUM_LIVES;
+		extraLife[i]=false;
+	}
+
+	public int getNumberOfGames()
+	{
+		return games;
+	}
+
+	/**
+	 * The points each game scored in the last step (including the bonus for the lives left when
+	 * the time ran out).
+	 */
+	public int[] getRewards()
+	{
+		return rewards;
+	}
+
+	/**
+	 * Whether each game ended in the last step; such games have already been restarted.
+	 */
+	public boolean[] getDone()
+	{
+		return done;
+	}
+
+	/**
+	 * The number of games that have ended so far.
+	 */
+	public long getEpisodes()
+	{
+		return episodes;
+	}
+
+	public long getSeed(int i)
+	{
+		return seeds[i];
+	}
+
+	public int getScore(int i)
+	{
+		return score[i];
+	}
+
+	public int getMazeIndex(int i)
+	{
+		return maze[i];
+	}
+
+	public int getPacmanCurrentNodeIndex(int i)
+	{
+		return pacManNode[i];
+	}
+
+	public int getGhostCurrentNodeIndex(int i,GHOST ghost)
+	{
+		return ghostNode[i*NUM_GHOSTS+ghost.ordinal()];
+	}
+
+	public boolean isPillStillAvailable(int i,int pillIndex)
+	{
+		return (pills[i][pillIndex>>6]&(1L<<pillIndex))!=0;
+	}
+
+	public boolean isPowerPillStillAvailable(int i,int powerPillIndex)
+	{
+		return (powerPills[i][powerPillIndex>>6]&(1L<<powerPillIndex))!=0;
+	}
+
+	/**
+	 * Writes the state of a game in the layout of Game.getStateVector().
+	 *
+	 * @param i The game
+	 * @param state The array to fill, of length Game.STATE_VECTOR_LENGTH
+	 */
+	public void getStateVector(int i,int[] state)
+	{
+		int index=0;
+
+		state[index++]=maze[i];
+		state[index++]=totalTime[i];
+		state[index++]=score[i];
+		state[index++]=levelTime[i];
+		state[index++]=levelCount[i];
+		state[index++]=pacManNode[i];
+		state[index++]=pacManMove[i];
+		state[index++]=lives[i];
+		state[index++]=extraLife[i] ? 1 : 0;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			state[index++]=ghostNode[g];
+			state[index++]=edibleTime[g];
+			state[index++]=lairTime[g];
+			state[index++]=ghostMove[g];
+		}
+
+		state[index++]=timeOfLastGlobalReversal[i];
+		state[index++]=pacManWasEaten[i] ? 1 : 0;
+		state[index++]=ghostsEaten[i];
+		state[index++]=pillWasEaten[i] ? 1 : 0;
+		state[index++]=powerPillWasEaten[i] ? 1 : 0;
+	}
+
+	/**
+	 * Sets a Game to the state of a game of the simulator, for instance to let a controller choose
+	 * its moves. The Game's own pseudo-random numbers are not affected.
+	 *
+	 * @param i The game
+	 * @param game The Game to set
+	 * @param state An array of length Game.STATE_VECTOR_LENGTH to use
+	 * @param activePills A bit set to use for the pills
+	 * @param activePowerPills A bit set to use for the power pills
+	 */
+	public void copyTo(int i,Game game,int[] state,BitSet activePills,BitSet activePowerPills)
+	{
+		getStateVector(i,state);
+
+		activePills.clear();
+		activePowerPills.clear();
+
+		for(int p=0;p<numberOfPills[maze[i]];p++)
+			if(isPillStillAvailable(i,p))
+				activePills.set(p);
+
+		for(int p=0;p<numberOfPowerPills[maze[i]];p++)
+			if(isPowerPillStillAvailable(i,p))
+				activePowerPills.set(p);
+
+		game.setStateVector(state,activePills,activePowerPills);
+	}
+
+	//Game._updatePacMan(), _eatPill() and _eatPowerPill()
+	private void updatePacMan(int i,int move)
+	{
+		int[] neighbour=neighbours[maze[i]];
+		int node=pacManNode[i];
+
+		if(neighbour[node*MOVES+move]<0)
+			move=neighbour[node*MOVES+pacManMove[i]]>=0 ? pacManMove[i] : NEUTRAL;
+
+		pacManMove[i]=move;
+
+		if(move!=NEUTRAL)
+			pacManNode[i]=node=neighbour[node*MOVES+move];
+
+		pillWasEaten[i]=false;
+
+		int pill=pillOfNode[maze[i]][node];
+
+		if(pill>=0 && (pills[i][pill>>6]&(1L<<pill))!=0)
+		{
+			score[i]+=PILL;
+			pills[i][pill>>6]&=~(1L<<pill);
+			pillWasEaten[i]=true;
+		}
+
+		powerPillWasEaten[i]=false;
+
+		int powerPill=powerPillOfNode[maze[i]][node];
+
+		if(powerPill>=0 && (powerPills[i][powerPill>>6]&(1L<<powerPill))!=0)
+		{
+			score[i]+=POWER_PILL;
+			ghostEatMultiplier[i]=1;
+			powerPills[i][powerPill>>6]&=~(1L<<powerPill);
+
+			int newEdibleTime=edibleTimes[levelCount[i]%LEVEL_RESET_REDUCTION];
+
+			for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+				edibleTime[g]=lairTime[g]==0 ? newEdibleTime : 0;
+
+			powerPillWasEaten[i]=true;
+		}
+	}
+
+	//Game.updateGhosts(): a reversal (by power pill or global event) replaces the ghosts' moves
+	private void updateGhosts(int i,int[] ghostMoves)
+	{
+		int[] neighbour=neighbours[maze[i]];
+		boolean globalReverse=nextDouble(reversalRandom,i)<GHOST_REVERSAL;
+		boolean reversed=false;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			if(levelTime[i]>1 && lairTime[g]==0 && ghostMove[g]!=NEUTRAL && (powerPillWasEaten[i] || globalReverse))
+			{
+				ghostMove[g]=opposite(ghostMove[g]);
+				ghostNode[g]=neighbour[ghostNode[g]*MOVES+ghostMove[g]];
+				reversed=true;
+				timeOfLastGlobalReversal[i]=totalTime[i];
+			}
+		}
+
+		if(reversed)
+			return;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			if(lairTime[g]==0 && (edibleTime[g]==0 || edibleTime[g]%GHOST_SPEED_REDUCTION!=0))
+			{
+				int direction=ghostMoves==null ? ghostMove[g] : ghostMoves[g];
+				int node=ghostNode[g];
+
+				//Game._checkGhostDir()
+				if(neighbour[node*MOVES+direction]<0 || direction==opposite(ghostMove[g]))
+				{
+					if(neighbour[node*MOVES+ghostMove[g]]>=0)
+						direction=ghostMove[g];
+					else
+					{
+						int[] moves=possibleMoves[maze[i]][node*MOVES+ghostMove[g]];
+						direction=moves[nextInt(random,i,moves.length)];
+					}
+				}
+
+				ghostMove[g]=direction;
+				ghostNode[g]=neighbour[node*MOVES+direction];
+			}
+		}
+	}
+
+	//Game.updateGame()
+	private void updateGame(int i)
+	{
+		feast(i);
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			if(lairTime[g]>0)
+				if(--lairTime[g]==0)
+					ghostNode[g]=initialGhostNode[maze[i]];
+
+		if(!extraLife[i] && score[i]>=EXTRA_LIFE_SCORE)
+		{
+			extraLife[i]=true;
+			lives[i]++;
+		}
+
+		totalTime[i]++;
+		levelTime[i]++;
+
+		if(totalTime[i]+1>MAX_TIME)
+		{
+			gameOver[i]=true;
+			score[i]+=lives[i]*AWARD_LIFE_LEFT;
+		}
+		else if((isEmpty(pills[i]) && isEmpty(powerPills[i])) || levelTime[i]>=LEVEL_LIMIT)
+			newLevelReset(i);
+	}
+
+	//Game._feast()
+	private void feast(int i)
+	{
+		pacManWasEaten[i]=false;
+		ghostsEaten[i]=0;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			int distance=distance(maze[i],pacManNode[i],ghostNode[g]);
+
+			if(distance<=EAT_DISTANCE && distance!=-1)
+			{
+				if(edibleTime[g]>0)
+				{
+					score[i]+=GHOST_EAT_SCORE*ghostEatMultiplier[i];
+					ghostEatMultiplier[i]*=2;
+					edibleTime[g]=0;
+					lairTime[g]=commonLairTimes[levelCount[i]%LEVEL_RESET_REDUCTION];
+					ghostNode[g]=lairNode[maze[i]];
+					ghostMove[g]=NEUTRAL;
+
+					ghostsEaten[i]|=1<<(g-i*NUM_GHOSTS);
+				}
+				else
+				{
+					lives[i]--;
+					pacManWasEaten[i]=true;
+
+					if(lives[i]<=0)
+						gameOver[i]=true;
+					else
+						levelReset(i);
+
+					return;
+				}
+			}
+		}
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			if(edibleTime[g]>0)
+				edibleTime[g]--;
+	}
+
+	private void newLevelReset(int i)
+	{
+		maze[i]=(maze[i]+1)%NUM_MAZES;
+		levelCount[i]++;
+		levelTime[i]=0;
+		ghostEatMultiplier[i]=1;
+
+		setPills(i);
+		levelReset(i);
+	}
+
+	private void levelReset(int i)
+	{
+		ghostEatMultiplier[i]=1;
+
+		initGhosts(i);
+
+		pacManNode[i]=initialPacManNode[maze[i]];
+		pacManMove[i]=LEFT;
+	}
+
+	private void initGhosts(int i)
+	{
+		for(int ghost=0;ghost<NUM_GHOSTS;ghost++)
+		{
+			int g=i*NUM_GHOSTS+ghost;
+
+			ghostNode[g]=lairNode[maze[i]];
+			edibleTime[g]=0;
+			lairTime[g]=initialLairTimes[ghost][levelCount[i]%LEVEL_RESET_REDUCTION];
+			ghostMove[g]=NEUTRAL;
+		}
+	}
+
+	private void setPills(int i)
+	{
+		pills[i]=setAll(pills[i],numberOfPills[maze[i]]);
+		powerPills[i]=setAll(powerPills[i],numberOfPowerPills[maze[i]]);
+	}
+
+	//the first count bits set, reusing the array if it is large enough
+	private static long[] setAll(long[] bits,int count)
+	{
+		int words=(count+63)>>6;
+
+		if(bits==null || bits.length<words)
+			bits=new long[words];
+
+		for(int w=0;w<words;w++)
+			bits[w]=w<words-1 || (count&63)==0 ? -1L : (1L<<(count&63))-1;
+
+		return bits;
+	}
+
+	private static boolean isEmpty(long[] bits)
+	{
+		for(long word : bits)
+			if(word!=0)
+				return false;
+
+		return true;
+	}
+
+	private static int distance(int maze,int from,int to)
+	{
+		if(from==to)
+			return 0;
+		else if(from<to)
+			return distances[maze][((to*(to+1))/2)+from];
+		else
+			return distances[maze][((from*(from+1))/2)+to];
+	}
+
+	private static int opposite(int move)
+	{
+		return move==NEUTRAL ? NEUTRAL : (move+2)%4;
+	}
+
+	//java.util.Random.next(), nextInt(bound) and nextDouble(), on the generator state of game i
+	private static int next(long[] state,int i,int bits)
+	{
+		state[i]=(state[i]*MULTIPLIER+ADDEND)&MASK;
+		return (int)(state[i]>>>(48-bits));
+	}
+
+	private static int nextInt(long[] state,int i,int bound)
+	{
+		int r=next(state,i,31);
+		int m=bound-1;
+
+		if((bound&m)==0)
+			return (int)((bound*(long)r)>>31);
+
+		for(int u=r;u-(r=u%bound)+m<0;u=next(state,i,31));
+
+		return r;
+	}
+
+	private static double nextDouble(long[] state,int i)
+	{
+		return (((long)(next(state,i,26))<<27)+next(state,i,27))*0x1.0p-53;
+	}
+
+	/**
+	 * Plays games with the simulator and with Game side by side, with the same seeds and moves
+	 * (chosen by example controllers on the Game), and checks after every time step that the
+	 * states, pills, rewards and ends of the games are identical. Then compares the time both take
+	 * to advance the games.
+	 *
+	 * Usage: java pacman.game.util.BatchSimulator [games] [steps]
+	 */
+	public static void main(String[] args)
+	{
+		int n=args.length>0 ? Integer.parseInt(args[0]) : 64;
+		int steps=args.length>1 ? Integer.parseInt(args[1]) : 20000;
+		long seed=1;
+
+		BatchSimulator simulator=new BatchSimulator(n,seed);
+		Game[] reference=new Game[n];
+		Controller<MOVE>[] pacMen=createPacMen(n);
+		Controller<EnumMap<GHOST,MOVE>>[] ghosts=createGhosts(n);
+
+		for(int i=0;i<n;i++)
+			reference[i]=referenceGame(seed+i);
+
+		int[] pacManMoves=new int[n];
+		int[] ghostMoves=new int[n*NUM_GHOSTS];
+		int[] expected=new int[Game.STATE_VECTOR_LENGTH],actual=new int[Game.STATE_VECTOR_LENGTH];
+		long mismatches=0,compared=0;
+		long nextReferenceSeed=seed+n;
+
+		for(int t=0;t<steps;t++)
+		{
+			EnumMap<GHOST,MOVE>[] ghostMaps=chooseMoves(reference,pacMen,ghosts,pacManMoves,ghostMoves);
+			simulator.step(pacManMoves,ghostMoves);
+
+			for(int i=0;i<n;i++)
+			{
+				Game game=reference[i];
+				int before=game.getScore();
+				game.advanceGame(MOVE.values()[pacManMoves[i]],ghostMaps[i]);
+
+				boolean same=game.getScore()-before==simulator.rewards[i] && game.gameOver()==simulator.done[i];
+
+				if(game.gameOver())
+					game=reference[i]=referenceGame(nextReferenceSeed++);
+
+				game.getStateVector(expected);
+				simulator.getStateVector(i,actual);
+				same&=Arrays.equals(expected,actual);
+
+				for(int p=0;p<game.getNumberOfPills();p++)
+					same&=game.isPillStillAvailable(p)==simulator.isPillStillAvailable(i,p);
+
+				for(int p=0;p<game.getNumberOfPowerPills();p++)
+					same&=game.isPowerPillStillAvailable(p)==simulator.isPowerPillStillAvailable(i,p);
+
+				if(!same && mismatches++<10)
+					System.out.println("Mismatch in game "+i+" at step "+t+":\n  Game:      "+Arrays.toString(expected)+"\n  simulator: "+Arrays.toString(actual));
+
+				compared++;
+			}
+		}
+
+		System.out.println(compared+" game steps compared, "+simulator.getEpisodes()+" games ended, "+mismatches+" mismatches");
+
+		//throughput, with random moves so that choosing them costs little
+		Random rnd=new Random(seed);
+		int[][] randomMoves=new int[256][n];
+
+		for(int[] moves : randomMoves)
+			for(int i=0;i<n;i++)
+				moves[i]=rnd.nextInt(4);
+
+		for(int round=0;round<2;round++)	//the first round warms up
+		{
+			long start=System.nanoTime();
+
+			for(int t=0;t<steps;t++)
+				simulator.step(randomMoves[t&255],null);
+
+			double simulatorRate=(double)n*steps/((System.nanoTime()-start)/1e9);
+
+			start=System.nanoTime();
+
+			for(int t=0;t<steps;t++)
+			{
+				for(int i=0;i<n;i++)
+				{
+					reference[i].advanceGame(MOVE.values()[randomMoves[t&255][i]],null);
+
+					if(reference[i].gameOver())
+						reference[i]=referenceGame(nextReferenceSeed++);
+				}
+			}
+
+			double gameRate=(double)n*steps/((System.nanoTime()-start)/1e9);
+
+			if(round==1)
+				System.out.printf("simulator: %.0f steps/s, Game: %.0f steps/s (%.1fx)%n",simulatorRate,gameRate,simulatorRate/gameRate);
+		}
+	}
+
+	private static Game referenceGame(long seed)
+	{
+		Game game=new Game(seed);
+		game.setReversalSeed(reversalSeed(seed));
+		return game;
+	}
+
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static Controller<MOVE>[] createPacMen(int n)
+	{
+		Controller<MOVE>[] pacMen=new Controller[n];
+
+		for(int i=0;i<n;i++)
+			pacMen[i]=i%3==0 ? new StarterPacMan() : i%3==1 ? new NearestPillPacMan() : new RandomPacMan();
+
+		return pacMen;
+	}
+
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static Controller<EnumMap<GHOST,MOVE>>[] createGhosts(int n)
+	{
+		Controller<EnumMap<GHOST,MOVE>>[] ghosts=new Controller[n];
+
+		for(int i=0;i<n;i++)
+			ghosts[i]=i%3==0 ? new Legacy() : i%3==1 ? new StarterGhosts() : new RandomGhosts();
+
+		return ghosts;
+	}
+
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static EnumMap<GHOST,MOVE>[] chooseMoves(Game[] reference,Controller<MOVE>[] pacMen,Controller<EnumMap<GHOST,MOVE>>[] ghosts,int[] pacManMoves,int[] ghostMoves)
+	{
+		EnumMap<GHOST,MOVE>[] ghostMaps=new EnumMap[reference.length];
+
+		for(int i=0;i<reference.length;i++)
+		{
+			pacManMoves[i]=pacMen[i].getMove(reference[i].copy(),-1).ordinal();
+			ghostMaps[i]=ghosts[i].getMove(reference[i].copy(),-1);
+
+			for(GHOST ghost : GHOST.values())
+			{
+				MOVE move=ghostMaps[i]==null ? null : ghostMaps[i].get(ghost);
+				ghostMoves[i*NUM_GHOSTS+ghost.ordinal()]=move==null ? NEUTRAL : move.ordinal();
+			}
+		}
+
+		return ghostMaps;
+	}
+}
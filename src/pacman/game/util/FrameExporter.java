@@ -0,0 +1,194 @@
+package pacman.game.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import pacman.game.Game;
+import pacman.game.GameRenderer;
+
+/**
+ * Renders binary replays (see ReplayWriter) to sequences of PNG images, one per time step, without
+ * a display. The replays are split into chunks of CHUNK time steps which are rendered by a pool of
+ * threads; each thread has its own renderer (and thus its own image) and its own game, and reads
+ * its chunk through its own ReplayReader, seeking to the chunk's first time step. The image of
+ * time step i of replay name.pmr is saved as name-i.png (i with 6 digits) in the output directory.
+ *
+ * Usage: java pacman.game.util.FrameExporter [-threads n] directory replay...
+ */
+public class FrameExporter implements Closeable
+{
+	public static final int CHUNK=1000;	//time steps per task; a multiple of the keyframe interval
+
+	private final ExecutorService pool;
+	private final ThreadLocal<GameRenderer> renderers;
+	private final ThreadLocal<Game> games;
+
+	/**
+	 * Creates an exporter with its pool of render threads.
+	 *
+	 * @param threads The number of render threads
+	 */
+	public FrameExporter(int threads)
+	{
+		pool=Executors.newFixedThreadPool(threads,runnable ->
+		{
+			Thread thread=new Thread(runnable,"Frame exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		renderers=ThreadLocal.withInitial(GameRenderer::new);
+		games=ThreadLocal.withInitial(() -> new Game(0));
+	}
+
+	/**
+	 * Renders every time step of a replay; returns once all images are saved.
+	 *
+	 * @param replay The replay file
+	 * @param directory The directory to save the images in; created if necessary
+	 * @return The number of images saved
+	 * @throws IOException If the replay cannot be read or an image cannot be saved
+	 */
+	public int export(String replay,String directory) throws IOException
+	{
+		return exportAll(Arrays.asList(replay),directory);
+	}
+
+	/**
+	 * Renders every time step of each replay; returns once all images are saved. The chunks of all
+	 * replays share the pool, so many short replays are rendered as efficiently as a long one.
+	 *
+	 * @param replays The replay files
+	 * @param directory The directory to save the images in; created if necessary
+	 * @return The number of images saved
+	 * @throws IOException If a replay cannot be read or an image cannot be saved
+	 */
+	public int exportAll(List<String> replays,String directory) throws IOException
+	{
+		File output=new File(directory);
+
+		if(!output.isDirectory() && !output.mkdirs())
+			throw new IOException("Cannot create directory "+directory);
+
+		ArrayList<Future<Integer>> chunks=new ArrayList<Future<Integer>>();
+
+		for(String replay : replays)
+		{
+			int length;
+
+			try(ReplayReader reader=new ReplayReader(replay))
+			{
+				length=reader.getLength();
+			}
+
+			String prefix=new File(output,baseName(replay)).getPath();
+
+			for(int from=0;from<length;from+=CHUNK)
+			{
+				int start=from;
+				chunks.add(pool.submit(() -> render(replay,prefix,start,Math.min(start+CHUNK,length))));
+			}
+		}
+
+		int saved=0;
+
+		try
+		{
+			for(Future<Integer> chunk : chunks)
+				saved+=chunk.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting",e);
+		}
+		catch(ExecutionException e)
+		{
+			for(Future<Integer> chunk : chunks)
+				chunk.cancel(false);
+
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+
+			throw new IOException("Exporting failed",e.getCause());
+		}
+
+		return saved;
+	}
+
+	/**
+	 * Stops the render threads.
+	 */
+	public void close()
+	{
+		pool.shutdown();
+	}
+
+	//runs on a render thread
+	private int render(String replay,String prefix,int from,int to) throws IOException
+	{
+		GameRenderer renderer=renderers.get();
+		Game game=games.get();
+		int saved=0;
+
+		try(ReplayReader reader=new ReplayReader(replay))
+		{
+			reader.seek(from);
+
+			for(int step=from;step<to && reader.next(game);step++)
+			{
+				ImageIO.write(renderer.render(game),"png",new File(String.format("%s-%06d.png",prefix,step)));
+				saved++;
+			}
+		}
+
+		return saved;
+	}
+
+	private static String baseName(String fileName)
+	{
+		String name=new File(fileName).getName();
+		int dot=name.lastIndexOf('.');
+
+		return dot>0 ? name.substring(0,dot) : name;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		System.setProperty("java.awt.headless","true");
+
+		int threads=Runtime.getRuntime().availableProcessors();
+		int first=0;
+
+		if(args.length>1 && args[0].equals("-threads"))
+		{
+			threads=Integer.parseInt(args[1]);
+			first=2;
+		}
+
+		if(args.length<first+2)
+		{
+			System.out.println("Usage: java pacman.game.util.FrameExporter [-threads n] directory replay...");
+			return;
+		}
+
+		List<String> replays=Arrays.asList(args).subList(first+1,args.length);
+		long start=System.currentTimeMillis();
+
+		try(FrameExporter exporter=new FrameExporter(threads))
+		{
+			int saved=exporter.exportAll(replays,args[first]);
+			System.out.println(saved+" images of "+replays.size()+" replays saved in "+(System.currentTimeMillis()-start)+" ms");
+		}
+	}
+}
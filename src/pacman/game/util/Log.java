@@ -1,28 +1,87 @@
 package pacman.game.util;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A log that can be used from the controllers without slowing them down. log() only stores the
+ * message (and the arguments to format it with) in a fixed-size ring buffer, without locking or
+ * formatting anything; a background thread takes the messages out in batches, formats them and,
+ * if enabled, prints them to the console. As before, nothing goes to the log file (in
+ * IO.DIRECTORY) until saveLog() is called: until then the formatted messages are kept in memory,
+ * saveLog() writes them, and from then on the writer appends new messages to the file as it
+ * takes them. If the writer falls behind by more than CAPACITY messages, further messages are
+ * dropped (and the number dropped is reported in the log) instead of blocking.
+ */
 public class Log
 {
+	public static final int CAPACITY=1<<13;	//messages buffered at most; a power of 2
+
+	private static final int MASK=CAPACITY-1;
+	private static final int BATCH=256;
+	private static final long IDLE_NANOS=1_000_000;
+
 	private static String fileName;
 	private static Log log=null;
-	private StringBuilder msg;
-	private boolean timeStamp,console;
+	private volatile boolean timeStamp,console;
+
+	//the ring buffer: slot i holds message number n (with n&MASK==i) once sequences[i]==n+1,
+	//and is free for message n+CAPACITY once the writer has set sequences[i] to that value
+	private final long[] times;
+	private final Object[] contexts;
+	private final String[] messages;
+	private final Object[][] arguments;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail;
+	private final LongAdder dropped;
+	private volatile long head;						//next message the writer takes; only the writer changes it
+	private volatile long discardBefore;			//messages before this number were cleared
+
+	//file output: saveLog() requests a save; the writer writes what it kept and then every new batch
+	private final AtomicLong saveRequests;
+	private volatile long savesDone;
+	private volatile boolean fileOutput,truncate;
+
+	private volatile Thread writer;
+	private FileChannel channel;
+	private String channelFile;
 
 	private Log()
 	{
-		msg=new StringBuilder();
-		
 		fileName="log.txt";
 		timeStamp=false;
 		console=false;
+
+		times=new long[CAPACITY];
+		contexts=new Object[CAPACITY];
+		messages=new String[CAPACITY];
+		arguments=new Object[CAPACITY][];
+		sequences=new AtomicLongArray(CAPACITY);
+		tail=new AtomicLong();
+		dropped=new LongAdder();
+		saveRequests=new AtomicLong();
+
+		for(int i=0;i<CAPACITY;i++)
+			sequences.set(i,i);
 	}
-	
-	public static Log getLog()
+
+	public static synchronized Log getLog()
 	{
 		if(log==null)
 			log=new Log();
-		
+
 		return log;
 	}
 
@@ -35,7 +94,7 @@ public class Log
 	{
 		console=false;
 	}
-	
+
 	public void setFile(String fileName)
 	{
 		Log.fileName=fileName;
@@ -49,37 +108,273 @@ public class Log
 	public void disableTimeStamp()
 	{
 		timeStamp=false;
-	}	
-	
+	}
+
+	/**
+	 * Logs a message.
+	 *
+	 * @param context The object logging the message; its class is shown with the message
+	 * @param message The message
+	 */
 	public void log(Object context, String message)
 	{
-		if(timeStamp)
-		{
-			String string="["+new Date().toString()+"; "+context.getClass().toString()+"]\t"+message;
-			
-			msg.append(string);
-			
-			if(console)
-				System.out.println(string);
-		}
-		else
-		{
-			String string="["+context.getClass().toString()+"]\t"+message;
-			
-			msg.append(string);
-			
-			if(console)
-				System.out.println(string);
-		}
+		offer(context,message,null);
+	}
+
+	/**
+	 * Logs a message that is only formatted (with String.format) by the writer thread, so the
+	 * caller pays for neither the formatting nor the string concatenation. Since formatting
+	 * happens later and on another thread, the arguments must not be changed after the call:
+	 * pass immutable values, not arrays, StringBuilders or other objects that are modified
+	 * afterwards. A message that cannot be formatted is written as the raw format string.
+	 *
+	 * @param context The object logging the message; its class is shown with the message
+	 * @param format The format string
+	 * @param args The arguments referenced by the format string
+	 */
+	public void log(Object context, String format, Object... args)
+	{
+		offer(context,format,args);
 	}
-	
+
+	/**
+	 * Discards the messages that have not been written to the log file yet.
+	 */
 	public void clear()
 	{
-		msg=new StringBuilder();
+		discardBefore=tail.get();
 	}
 
+	/**
+	 * Writes the messages logged so far that have not been written yet to the log file and waits
+	 * until they are; from then on, the writer appends new messages to the file as it takes them.
+	 *
+	 * @param append Whether to add to the file instead of replacing it
+	 */
     public void saveLog(boolean append)
     {
-    	IO.saveFile(fileName, msg.toString(),append);
+    	if(!append)
+    		truncate=true;
+
+    	long request=saveRequests.incrementAndGet();
+    	fileOutput=true;
+
+    	if(writer==null)
+    		startWriter();
+
+    	flush();
+
+    	Thread current=writer;
+
+    	while(current.isAlive() && savesDone<request)
+    	{
+    		LockSupport.unpark(current);
+    		LockSupport.parkNanos(IDLE_NANOS/10);
+    	}
     }
-}
\ No newline at end of file
+
+	/**
+	 * Waits until all messages logged so far have been taken by the writer: printed, if enabled,
+	 * and written to the log file once saveLog() has been called.
+	 */
+	public void flush()
+	{
+		long target=tail.get();
+		Thread current=writer;
+
+		while(current!=null && current.isAlive() && head<target)
+		{
+			LockSupport.unpark(current);
+			LockSupport.parkNanos(IDLE_NANOS/10);
+		}
+	}
+
+	/**
+	 * Returns the number of messages dropped so far because the buffer was full.
+	 *
+	 * @return The number of messages dropped
+	 */
+	public long getDropped()
+	{
+		return dropped.sum();
+	}
+
+	//claim the next slot and fill it; never blocks
+	private void offer(Object context,String message,Object[] args)
+	{
+		long position=tail.get();
+
+		while(true)
+		{
+			int slot=(int)(position&MASK);
+			long difference=sequences.get(slot)-position;
+
+			if(difference==0)
+			{
+				if(tail.compareAndSet(position,position+1))
+					break;
+
+				position=tail.get();
+			}
+			else if(difference<0)
+			{
+				dropped.increment();	//full: the writer has not freed this slot yet
+				return;
+			}
+			else
+				position=tail.get();		//another thread took this slot
+		}
+
+		int slot=(int)(position&MASK);
+		times[slot]=System.currentTimeMillis();
+		contexts[slot]=context;
+		messages[slot]=message;
+		arguments[slot]=args;
+		sequences.lazySet(slot,position+1);	//publish
+
+		if(writer==null)
+			startWriter();
+	}
+
+	private synchronized void startWriter()
+	{
+		if(writer!=null)
+			return;
+
+		Thread thread=new Thread(this::write,"Log writer");
+		thread.setDaemon(true);
+		writer=thread;
+		thread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+	}
+
+	//the writer thread: take messages out of the ring in batches and write them
+	private void write()
+	{
+		StringBuilder batch=new StringBuilder();
+		StringBuilder kept=new StringBuilder();	//messages not written to the file yet
+		long reportedDrops=0,cleared=0;
+
+		while(true)
+		{
+			long position=head;
+			int taken=0;
+
+			if(discardBefore!=cleared)
+			{
+				cleared=discardBefore;
+				kept.setLength(0);
+			}
+
+			while(taken<BATCH)
+			{
+				int slot=(int)(position&MASK);
+
+				if(sequences.get(slot)!=position+1)
+					break;
+
+				if(position>=discardBefore)
+					format(batch,times[slot],contexts[slot],messages[slot],arguments[slot]);
+
+				contexts[slot]=null;
+				messages[slot]=null;
+				arguments[slot]=null;
+				sequences.lazySet(slot,position+CAPACITY);	//free the slot
+				position++;
+				taken++;
+			}
+
+			long drops=dropped.sum();
+
+			if(drops>reportedDrops)
+			{
+				batch.append("[Log]\t").append(drops-reportedDrops).append(" messages dropped: buffer full\n");
+				reportedDrops=drops;
+			}
+
+			if(batch.length()>0)
+			{
+				if(console)
+					System.out.print(batch);
+
+				kept.append(batch);
+				batch.setLength(0);
+			}
+
+			long saves=saveRequests.get();
+
+			if(fileOutput && (kept.length()>0 || saves!=savesDone))
+			{
+				output(kept);
+				kept.setLength(0);
+				savesDone=saves;
+			}
+
+			head=position;
+
+			if(taken==0)
+				LockSupport.parkNanos(this,IDLE_NANOS);
+		}
+	}
+
+	private void format(StringBuilder batch,long time,Object context,String message,Object[] args)
+	{
+		batch.append('[');
+
+		if(timeStamp)
+			batch.append(new Date(time)).append("; ");
+
+		batch.append(context==null ? "null" : context.getClass().toString()).append("]\t");
+
+		if(args==null)
+			batch.append(message);
+		else
+		{
+			//a bad format string or a throwing toString() must not stop the writer thread
+			try
+			{
+				batch.append(String.format(message,args));
+			}
+			catch(RuntimeException e)
+			{
+				batch.append(message).append(" (could not be formatted: ").append(e).append(')');
+			}
+		}
+
+		batch.append('\n');
+	}
+
+	private void output(StringBuilder batch)
+	{
+		try
+		{
+			String file=IO.DIRECTORY+fileName;
+
+			if(channel==null || !file.equals(channelFile))
+			{
+				if(channel!=null)
+					channel.close();
+
+				channel=FileChannel.open(Paths.get(file),CREATE,WRITE,APPEND);
+				channelFile=file;
+			}
+
+			if(truncate)
+			{
+				truncate=false;
+				channel.truncate(0);
+			}
+
+			ByteBuffer bytes=ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+
+			while(bytes.hasRemaining())
+				channel.write(bytes);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			channel=null;
+		}
+	}
+}
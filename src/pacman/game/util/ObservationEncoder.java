@@ -0,0 +1,192 @@
+package pacman.game.util;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import pacman.game.Game;
+import pacman.game.Constants.GHOST;
+import pacman.game.internal.Maze;
+import pacman.game.internal.Node;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Encodes game states as observations for learning: a stack of CHANNELS grids of WIDTH x HEIGHT
+ * floats, one cell per maze coordinate (the x and y of the nodes in Maze.graph), laid out channel
+ * by channel and row by row, so that the value of channel c at (x,y) is at
+ * c*WIDTH*HEIGHT+y*WIDTH+x. The channels are:
+ *
+ * WALLS: 1 where there is no node; PILLS and POWER_PILLS: 1 where a pill is still available;
+ * PACMAN: 1 at Ms Pac-Man's node; GHOSTS+i: 1 at the node of the ghost with ordinal i;
+ * EDIBLE: the edible time of the ghosts at their nodes, divided by EDIBLE_TIME; LAIR: the lair time
+ * of the ghosts at their nodes, divided by the longest initial lair time. Where ghosts share a
+ * node, EDIBLE and LAIR hold the largest value. All other cells are 0.
+ *
+ * Observations are written into a float[] or a FloatBuffer (direct or not) supplied by the caller,
+ * at a given offset or, for batches, one after the other; the position of a buffer is not
+ * changed. Nothing is allocated per call: the walls and the cell of every node are computed once
+ * per maze, and each observation is written by clearing it, copying in the walls and setting the
+ * few other non-zero cells. An encoder is not thread-safe; use one per thread.
+ */
+public class ObservationEncoder
+{
+	public static final int WIDTH=109,HEIGHT=117;
+	public static final int WALLS=0,PILLS=1,POWER_PILLS=2,PACMAN=3,GHOSTS=4,EDIBLE=GHOSTS+NUM_GHOSTS,LAIR=EDIBLE+1;
+	public static final int CHANNELS=LAIR+1;
+	public static final int PLANE=WIDTH*HEIGHT;
+	public static final int SIZE=CHANNELS*PLANE;	//floats per observation
+
+	private static final float MAX_LAIR_TIME=GHOST.SUE.initialLairTime;
+	private static final GHOST[] GHOST_TYPES=GHOST.values();	//values() copies the array on every call
+
+	private final float[][] wallsOfMaze;		//the WALLS plane of each maze
+	private final int[][] cellsOfMaze;			//the cell of each node of each maze
+	private final float[] zeros;
+
+	//the cells other than walls to set, and their values, for the observation being written
+	private final int[] cells;
+	private final float[] values;
+	private int count;
+
+	public ObservationEncoder()
+	{
+		wallsOfMaze=new float[NUM_MAZES][];
+		cellsOfMaze=new int[NUM_MAZES][];
+		zeros=new float[PLANE];
+		cells=new int[2048];
+		values=new float[2048];
+	}
+
+	/**
+	 * Writes the observation of a game into an array.
+	 *
+	 * @param game The game
+	 * @param observations The array; must hold SIZE floats from the offset on
+	 * @param offset The index of the first float of the observation
+	 */
+	public void encode(Game game,float[] observations,int offset)
+	{
+		float[] walls=collect(game);
+
+		Arrays.fill(observations,offset+PLANE,offset+SIZE,0);
+		System.arraycopy(walls,0,observations,offset,PLANE);
+
+		for(int i=0;i<count;i++)
+		{
+			int index=offset+cells[i];
+			observations[index]=Math.max(observations[index],values[i]);
+		}
+	}
+
+	/**
+	 * Writes the observation of a game into a buffer, without changing its position.
+	 *
+	 * @param game The game
+	 * @param observations The buffer; must hold SIZE floats from the offset on
+	 * @param offset The index of the first float of the observation
+	 */
+	public void encode(Game game,FloatBuffer observations,int offset)
+	{
+		float[] walls=collect(game);
+
+		observations.put(offset,walls,0,PLANE);
+
+		for(int channel=1;channel<CHANNELS;channel++)
+			observations.put(offset+channel*PLANE,zeros,0,PLANE);
+
+		for(int i=0;i<count;i++)
+		{
+			int index=offset+cells[i];
+			observations.put(index,Math.max(observations.get(index),values[i]));
+		}
+	}
+
+	/**
+	 * Writes the observations of several games one after the other into an array, starting at
+	 * index 0: the observation of games[i] starts at i*SIZE.
+	 *
+	 * @param games The games
+	 * @param observations The array; must hold games.length*SIZE floats
+	 */
+	public void encode(Game[] games,float[] observations)
+	{
+		for(int i=0;i<games.length;i++)
+			encode(games[i],observations,i*SIZE);
+	}
+
+	/**
+	 * Writes the observations of several games one after the other into a buffer, starting at
+	 * index 0 and without changing its position: the observation of games[i] starts at i*SIZE.
+	 *
+	 * @param games The games
+	 * @param observations The buffer; must hold games.length*SIZE floats
+	 */
+	public void encode(Game[] games,FloatBuffer observations)
+	{
+		for(int i=0;i<games.length;i++)
+			encode(games[i],observations,i*SIZE);
+	}
+
+	//collect the non-zero cells of the observation other than the walls; returns the walls
+	private float[] collect(Game game)
+	{
+		int maze=game.getMazeIndex();
+
+		if(wallsOfMaze[maze]==null)
+			prepare(maze,game.getCurrentMaze());
+
+		int[] nodeCells=cellsOfMaze[maze];
+		count=0;
+
+		int[] pills=game.getPillIndices();
+
+		for(int i=0;i<pills.length;i++)
+			if(game.isPillStillAvailable(i))
+				add(PILLS,nodeCells[pills[i]],1);
+
+		int[] powerPills=game.getPowerPillIndices();
+
+		for(int i=0;i<powerPills.length;i++)
+			if(game.isPowerPillStillAvailable(i))
+				add(POWER_PILLS,nodeCells[powerPills[i]],1);
+
+		add(PACMAN,nodeCells[game.getPacmanCurrentNodeIndex()],1);
+
+		for(GHOST ghost : GHOST_TYPES)
+		{
+			int cell=nodeCells[game.getGhostCurrentNodeIndex(ghost)];
+
+			add(GHOSTS+ghost.ordinal(),cell,1);
+			add(EDIBLE,cell,Math.min(1,game.getGhostEdibleTime(ghost)/(float)EDIBLE_TIME));
+			add(LAIR,cell,Math.min(1,game.getGhostLairTime(ghost)/MAX_LAIR_TIME));
+		}
+
+		return wallsOfMaze[maze];
+	}
+
+	private void add(int channel,int cell,float value)
+	{
+		if(value>0)
+		{
+			cells[count]=channel*PLANE+cell;
+			values[count++]=value;
+		}
+	}
+
+	private void prepare(int mazeIndex,Maze maze)
+	{
+		float[] walls=new float[PLANE];
+		int[] nodeCells=new int[maze.graph.length];
+
+		Arrays.fill(walls,1);
+
+		for(Node node : maze.graph)
+		{
+			nodeCells[node.nodeIndex]=node.y*WIDTH+node.x;
+			walls[nodeCells[node.nodeIndex]]=0;
+		}
+
+		wallsOfMaze[mazeIndex]=walls;
+		cellsOfMaze[mazeIndex]=nodeCells;
+	}
+}
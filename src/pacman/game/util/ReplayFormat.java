@@ -0,0 +1,103 @@
+package pacman.game.util;
+
+import java.nio.ByteBuffer;
+
+import pacman.game.Game;
+
+import static pacman.game.Constants.NUM_GHOSTS;
+
+/**
+ * The layout shared by ReplayWriter and ReplayReader. A replay starts with MAGIC and VERSION and
+ * continues with one record per time step, ending with END:
+ *
+ * KEYFRAME: every value of the state vector (see Game.getStateVector()) as a zig-zag varint,
+ * followed by the number of pills and power pills of the maze, each followed by a bitmap of the
+ * ones still available.
+ *
+ * DELTA: a varint bit mask of the state vector values that differ from their prediction, the
+ * zig-zag varint differences for those values, then the number of pills whose availability
+ * flipped and their indices (each as the varint gap to the previous one), and the same for the
+ * power pills. The prediction is the previous value, except that the clocks advance by one and
+ * the edible and lair timers count down by one, so most values never need to be stored.
+ *
+ * Keyframes are written at the start, whenever the level changes and at least every
+ * KEYFRAME_INTERVAL time steps. Since version 2 the END record is followed by an index of the
+ * keyframes (their number, then for each the gaps in time steps and in file offset to the
+ * previous one, as varints) and a fixed footer of FOOTER_BYTES: the offset of the index (long),
+ * the number of time steps (int) and MAGIC again. A reader can thus jump to the keyframe before
+ * any time step and decode at most KEYFRAME_INTERVAL-1 deltas from there.
+ */
+final class ReplayFormat
+{
+	static final int MAGIC=0x504D5250;	//"PMRP"
+	static final byte VERSION=2;
+
+	static final byte END=0,KEYFRAME=1,DELTA=2;
+
+	static final int KEYFRAME_INTERVAL=200;
+	static final int FOOTER_BYTES=8+4+4;
+	static final int HEADER_BYTES=4+1;
+	static final int MAX_RECORD_BYTES=2048;	//generous upper bound of a single record
+
+	//positions in the state vector
+	static final int TOTAL_TIME=1,LEVEL_TIME=3,LEVEL=4,FIRST_GHOST=9,GHOST_FIELDS=4;
+	static final int EDIBLE_TIME=1,LAIR_TIME=2;	//offsets within a ghost's fields
+
+	private ReplayFormat()
+	{
+	}
+
+	/**
+	 * Predicts the next state vector from the previous one.
+	 */
+	static void predict(int[] previous,int[] predicted)
+	{
+		System.arraycopy(previous,0,predicted,0,Game.STATE_VECTOR_LENGTH);
+
+		predicted[TOTAL_TIME]++;
+		predicted[LEVEL_TIME]++;
+
+		for(int i=0;i<NUM_GHOSTS;i++)
+		{
+			int ghost=FIRST_GHOST+i*GHOST_FIELDS;
+			predicted[ghost+EDIBLE_TIME]=Math.max(0,predicted[ghost+EDIBLE_TIME]-1);
+			predicted[ghost+LAIR_TIME]=Math.max(0,predicted[ghost+LAIR_TIME]-1);
+		}
+	}
+
+	static void putVarint(ByteBuffer buffer,int value)
+	{
+		while((value&~0x7F)!=0)
+		{
+			buffer.put((byte)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+
+		buffer.put((byte)value);
+	}
+
+	static int getVarint(ByteBuffer buffer)
+	{
+		int value=0;
+
+		for(int shift=0;;shift+=7)
+		{
+			byte b=buffer.get();
+			value|=(b&0x7F)<<shift;
+
+			if(b>=0)
+				return value;
+		}
+	}
+
+	static void putSigned(ByteBuffer buffer,int value)
+	{
+		putVarint(buffer,(value<<1)^(value>>31));
+	}
+
+	static int getSigned(ByteBuffer buffer)
+	{
+		int value=getVarint(buffer);
+		return (value>>>1)^-(value&1);
+	}
+}
@@ -0,0 +1,415 @@
+package pacman.game.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pacman.game.Game;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Plays back a binary replay written by ReplayWriter. Time steps are numbered from 0 in the order
+ * they were recorded. The reader plays them one at a time with next(), and seek() jumps to any
+ * time step: it looks up the nearest keyframe at or before it in the replay's index, reads the
+ * file from there and decodes at most KEYFRAME_INTERVAL-1 deltas. The file is read through a
+ * buffer that is refilled as the replay proceeds, so replays of any length are read in constant
+ * memory (apart from the index).
+ *
+ * Nothing here sleeps or draws, so the reader can also be used headless, for instance to scan
+ * many recorded games for particular situations (see getStates()).
+ */
+public class ReplayReader implements Closeable
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private boolean endOfFile,finished;
+
+	private final int[] state,predicted;
+	private final BitSet pills,powerPills;
+
+	private int[] keyframeSteps;		//time step and file offset of every keyframe
+	private long[] keyframeOffsets;
+	private int keyframes,length;
+	private int step;					//the time step the next record holds
+
+	/**
+	 * Opens a replay.
+	 *
+	 * @param fileName The name of the replay file
+	 * @throws IOException If the file cannot be read or is not a binary replay
+	 */
+	public ReplayReader(String fileName) throws IOException
+	{
+		channel=FileChannel.open(Paths.get(fileName),READ);
+		buffer=ByteBuffer.allocateDirect(1<<16);
+		buffer.limit(0);
+
+		state=new int[Game.STATE_VECTOR_LENGTH];
+		predicted=new int[Game.STATE_VECTOR_LENGTH];
+		pills=new BitSet();
+		powerPills=new BitSet();
+
+		fill();
+
+		if(buffer.remaining()<ReplayFormat.HEADER_BYTES || buffer.getInt()!=ReplayFormat.MAGIC)
+		{
+			channel.close();
+			throw new IOException(fileName+" is not a binary replay");
+		}
+
+		byte version=buffer.get();
+
+		if(version<1 || version>ReplayFormat.VERSION)
+		{
+			channel.close();
+			throw new IOException(fileName+" has unsupported replay version "+version);
+		}
+
+		if(version<2 || !readIndex())
+			buildIndex();
+	}
+
+	/**
+	 * Checks whether a file is a binary replay (as opposed to the text replays of earlier
+	 * versions, with one game state string per line).
+	 *
+	 * @param fileName The name of the file
+	 * @return Whether the file starts like a binary replay
+	 */
+	public static boolean isBinaryReplay(String fileName)
+	{
+		try(FileChannel channel=FileChannel.open(Paths.get(fileName),READ))
+		{
+			ByteBuffer header=ByteBuffer.allocate(4);
+
+			while(header.hasRemaining() && channel.read(header)>=0);
+
+			header.flip();
+			return header.remaining()==4 && header.getInt()==ReplayFormat.MAGIC;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the given time steps of a replay into a list of games, without any delays.
+	 *
+	 * @param fileName The name of the replay file
+	 * @param from The first time step (inclusive)
+	 * @param to The last time step (exclusive); clipped to the length of the replay
+	 * @return The game states of the time steps
+	 * @throws IOException If the replay cannot be read
+	 */
+	public static ArrayList<Game> getStates(String fileName,int from,int to) throws IOException
+	{
+		try(ReplayReader replay=new ReplayReader(fileName))
+		{
+			return replay.getStates(from,to);
+		}
+	}
+
+	/**
+	 * Reads the given time steps into a list of games, without any delays. Afterwards, next()
+	 * continues with the time step after the last one read.
+	 *
+	 * @param from The first time step (inclusive)
+	 * @param to The last time step (exclusive); clipped to the length of the replay
+	 * @return The game states of the time steps
+	 * @throws IOException If the replay cannot be read
+	 */
+	public ArrayList<Game> getStates(int from,int to) throws IOException
+	{
+		ArrayList<Game> states=new ArrayList<Game>();
+		to=Math.min(to,length);
+
+		if(from>=to)
+			return states;
+
+		seek(from);
+
+		while(step<to)
+		{
+			Game game=new Game(0);
+
+			if(!next(game))
+				break;
+
+			states.add(game);
+		}
+
+		return states;
+	}
+
+	/**
+	 * Returns the number of time steps in the replay.
+	 *
+	 * @return The number of time steps
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the time step the next call of next() will produce.
+	 *
+	 * @return The next time step
+	 */
+	public int getStep()
+	{
+		return step;
+	}
+
+	/**
+	 * Positions the replay so that the next call of next() produces the given time step.
+	 *
+	 * @param target The time step, from 0 to getLength()
+	 * @throws IOException If the replay cannot be read
+	 */
+	public void seek(int target) throws IOException
+	{
+		if(target<0 || target>length)
+			throw new IndexOutOfBoundsException("Time step "+target+" of a replay of length "+length);
+
+		if(keyframes==0)
+			return;
+
+		//keep decoding forward when the target lies ahead within the current keyframe's range
+		int keyframe=keyframeAtOrBefore(target);
+
+		if(target<step || finished || keyframeSteps[keyframe]>step)
+		{
+			position(keyframeOffsets[keyframe]);
+			step=keyframeSteps[keyframe];
+		}
+
+		while(step<target)
+			if(!decode())
+				break;
+	}
+
+	/**
+	 * Sets the game to the next time step of the replay.
+	 *
+	 * @param game The game to update
+	 * @return Whether there was another time step; false once the replay has ended
+	 * @throws IOException If the replay cannot be read or is corrupt
+	 */
+	public boolean next(Game game) throws IOException
+	{
+		if(!decode())
+			return false;
+
+		game.setStateVector(state,pills,powerPills);
+		return true;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	//decode the next record into the state, without touching a game
+	private boolean decode() throws IOException
+	{
+		if(finished)
+			return false;
+
+		if(buffer.remaining()<ReplayFormat.MAX_RECORD_BYTES)
+			fill();
+
+		if(!buffer.hasRemaining())
+			throw new IOException("Replay ends without an end marker");
+
+		byte type=buffer.get();
+
+		switch(type)
+		{
+			case ReplayFormat.KEYFRAME:
+				readKeyframe();
+				break;
+			case ReplayFormat.DELTA:
+				readDelta();
+				break;
+			case ReplayFormat.END:
+				finished=true;
+				return false;
+			default:
+				throw new IOException("Corrupt replay: unknown record type "+type);
+		}
+
+		step++;
+		return true;
+	}
+
+	private void readKeyframe()
+	{
+		for(int i=0;i<Game.STATE_VECTOR_LENGTH;i++)
+			state[i]=ReplayFormat.getSigned(buffer);
+
+		readBitmap(pills);
+		readBitmap(powerPills);
+	}
+
+	private void readDelta()
+	{
+		ReplayFormat.predict(state,predicted);
+
+		int mask=ReplayFormat.getVarint(buffer);
+
+		for(int i=0;i<Game.STATE_VECTOR_LENGTH;i++)
+			state[i]=(mask&(1<<i))!=0 ? predicted[i]+ReplayFormat.getSigned(buffer) : predicted[i];
+
+		readFlipped(pills);
+		readFlipped(powerPills);
+	}
+
+	private void readBitmap(BitSet bits)
+	{
+		int length=ReplayFormat.getVarint(buffer);
+		bits.clear();
+
+		for(int i=0;i<length;i+=8)
+		{
+			int b=buffer.get();
+
+			for(int j=0;j<8 && i+j<length;j++)
+				if((b&(1<<j))!=0)
+					bits.set(i+j);
+		}
+	}
+
+	private void readFlipped(BitSet bits)
+	{
+		int count=ReplayFormat.getVarint(buffer);
+
+		for(int k=0,index=0;k<count;k++)
+		{
+			index+=ReplayFormat.getVarint(buffer);
+			bits.flip(index);
+		}
+	}
+
+	//read the index from the end of the file; false if there is none
+	private boolean readIndex() throws IOException
+	{
+		long size=channel.size();
+
+		if(size<ReplayFormat.HEADER_BYTES+ReplayFormat.FOOTER_BYTES)
+			return false;
+
+		ByteBuffer footer=ByteBuffer.allocate(ReplayFormat.FOOTER_BYTES);
+		read(footer,size-ReplayFormat.FOOTER_BYTES);
+
+		long indexOffset=footer.getLong();
+		int steps=footer.getInt();
+
+		if(footer.getInt()!=ReplayFormat.MAGIC || indexOffset<ReplayFormat.HEADER_BYTES || indexOffset>size-ReplayFormat.FOOTER_BYTES)
+			return false;
+
+		ByteBuffer index=ByteBuffer.allocate((int)(size-ReplayFormat.FOOTER_BYTES-indexOffset));
+		read(index,indexOffset);
+
+		keyframes=ReplayFormat.getVarint(index);
+		keyframeSteps=new int[Math.max(1,keyframes)];
+		keyframeOffsets=new long[Math.max(1,keyframes)];
+
+		for(int i=0;i<keyframes;i++)
+		{
+			keyframeSteps[i]=(i==0 ? 0 : keyframeSteps[i-1])+ReplayFormat.getVarint(index);
+			keyframeOffsets[i]=(i==0 ? 0 : keyframeOffsets[i-1])+ReplayFormat.getVarint(index);
+		}
+
+		length=steps;
+		return true;
+	}
+
+	//replays without an index (version 1): find the keyframes by decoding the whole replay once
+	private void buildIndex() throws IOException
+	{
+		keyframeSteps=new int[64];
+		keyframeOffsets=new long[64];
+		keyframes=0;
+
+		while(true)
+		{
+			if(buffer.remaining()<ReplayFormat.MAX_RECORD_BYTES)
+				fill();
+
+			if(buffer.hasRemaining() && buffer.get(buffer.position())==ReplayFormat.KEYFRAME)
+			{
+				if(keyframes==keyframeSteps.length)
+				{
+					keyframeSteps=Arrays.copyOf(keyframeSteps,2*keyframes);
+					keyframeOffsets=Arrays.copyOf(keyframeOffsets,2*keyframes);
+				}
+
+				keyframeSteps[keyframes]=step;
+				keyframeOffsets[keyframes]=channel.position()-buffer.remaining();
+				keyframes++;
+			}
+
+			if(!decode())
+				break;
+		}
+
+		length=step;
+		position(ReplayFormat.HEADER_BYTES);
+		step=0;
+	}
+
+	//index of the last keyframe at or before the time step
+	private int keyframeAtOrBefore(int target)
+	{
+		int index=Arrays.binarySearch(keyframeSteps,0,keyframes,target);
+		return index>=0 ? index : Math.max(0,-index-2);
+	}
+
+	//continue reading from the given offset in the file
+	private void position(long offset) throws IOException
+	{
+		channel.position(offset);
+		buffer.clear();
+		buffer.limit(0);
+		endOfFile=false;
+		finished=false;
+		fill();
+	}
+
+	private void read(ByteBuffer into,long offset) throws IOException
+	{
+		while(into.hasRemaining())
+			if(channel.read(into,offset+into.position())<0)
+				throw new IOException("Replay is truncated");
+
+		into.flip();
+	}
+
+	//move the unread bytes to the front of the buffer and read as much as fits behind them
+	private void fill() throws IOException
+	{
+		if(endOfFile)
+			return;
+
+		buffer.compact();
+
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer)<0)
+			{
+				endOfFile=true;
+				break;
+			}
+		}
+
+		buffer.flip();
+	}
+}
@@ -0,0 +1,230 @@
+package pacman.game.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pacman.game.Game;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Records a game as a compact binary replay (see ReplayFormat), one time step at a time. Records
+ * are collected in a buffer that is written to the file whenever it fills up, so a replay of any
+ * length is recorded in (almost) constant memory: only the positions of the keyframes are kept,
+ * to be written as the index. The replay is complete once the writer is closed.
+ */
+public class ReplayWriter implements Closeable
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	private int[] previous,current,predicted;
+	private BitSet pills,powerPills,lastPills,lastPowerPills,flipped;
+	private int sinceKeyframe,steps;
+	private long flushed;					//bytes already written to the file
+	private int[] keyframeSteps;				//time step and file offset of every keyframe, for the index
+	private long[] keyframeOffsets;
+	private int keyframes;
+
+	/**
+	 * Creates (or overwrites) the replay file.
+	 *
+	 * @param fileName The name of the replay file
+	 * @throws IOException If the file cannot be created
+	 */
+	public ReplayWriter(String fileName) throws IOException
+	{
+		channel=FileChannel.open(Paths.get(fileName),CREATE,WRITE,TRUNCATE_EXISTING);
+		buffer=ByteBuffer.allocateDirect(1<<16);
+
+		previous=new int[Game.STATE_VECTOR_LENGTH];
+		current=new int[Game.STATE_VECTOR_LENGTH];
+		predicted=new int[Game.STATE_VECTOR_LENGTH];
+		pills=new BitSet();
+		powerPills=new BitSet();
+		lastPills=new BitSet();
+		lastPowerPills=new BitSet();
+		flipped=new BitSet();
+		sinceKeyframe=-1;
+		keyframeSteps=new int[64];
+		keyframeOffsets=new long[64];
+
+		buffer.putInt(ReplayFormat.MAGIC);
+		buffer.put(ReplayFormat.VERSION);
+	}
+
+	/**
+	 * Appends the current state of the game as the next time step of the replay.
+	 *
+	 * @param game The game
+	 * @throws IOException If the replay cannot be written
+	 */
+	public void write(Game game) throws IOException
+	{
+		if(buffer.remaining()<ReplayFormat.MAX_RECORD_BYTES)
+			flush();
+
+		game.getStateVector(current);
+
+		if(sinceKeyframe<0 || sinceKeyframe>=ReplayFormat.KEYFRAME_INTERVAL-1
+				|| current[ReplayFormat.LEVEL]!=previous[ReplayFormat.LEVEL] || current[0]!=previous[0])
+			writeKeyframe(game);
+		else
+			writeDelta(game);
+
+		steps++;
+
+		int[] swap=previous;
+		previous=current;
+		current=swap;
+	}
+
+	/**
+	 * Ends the replay, writes the keyframe index and closes the file.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			buffer.put(ReplayFormat.END);
+			flush();
+
+			long indexOffset=flushed;
+			ReplayFormat.putVarint(buffer,keyframes);
+
+			for(int i=0;i<keyframes;i++)
+			{
+				if(buffer.remaining()<ReplayFormat.FOOTER_BYTES+16)
+					flush();
+
+				ReplayFormat.putVarint(buffer,keyframeSteps[i]-(i==0 ? 0 : keyframeSteps[i-1]));
+				ReplayFormat.putVarint(buffer,(int)(keyframeOffsets[i]-(i==0 ? 0 : keyframeOffsets[i-1])));
+			}
+
+			buffer.putLong(indexOffset);
+			buffer.putInt(steps);
+			buffer.putInt(ReplayFormat.MAGIC);
+			flush();
+		}
+		finally
+		{
+			//close the file even if the end or the index could not be written
+			channel.close();
+		}
+	}
+
+	private void writeKeyframe(Game game)
+	{
+		if(keyframes==keyframeSteps.length)
+		{
+			keyframeSteps=Arrays.copyOf(keyframeSteps,2*keyframes);
+			keyframeOffsets=Arrays.copyOf(keyframeOffsets,2*keyframes);
+		}
+
+		keyframeSteps[keyframes]=steps;
+		keyframeOffsets[keyframes]=flushed+buffer.position();
+		keyframes++;
+
+		buffer.put(ReplayFormat.KEYFRAME);
+
+		for(int value : current)
+			ReplayFormat.putSigned(buffer,value);
+
+		readPills(game);
+		writeBitmap(pills,game.getNumberOfPills());
+		writeBitmap(powerPills,game.getNumberOfPowerPills());
+
+		sinceKeyframe=0;
+	}
+
+	private void writeDelta(Game game)
+	{
+		buffer.put(ReplayFormat.DELTA);
+		ReplayFormat.predict(previous,predicted);
+
+		int mask=0;
+
+		for(int i=0;i<Game.STATE_VECTOR_LENGTH;i++)
+			if(current[i]!=predicted[i])
+				mask|=1<<i;
+
+		ReplayFormat.putVarint(buffer,mask);
+
+		for(int i=0;i<Game.STATE_VECTOR_LENGTH;i++)
+			if(current[i]!=predicted[i])
+				ReplayFormat.putSigned(buffer,current[i]-predicted[i]);
+
+		BitSet swap=lastPills;
+		lastPills=pills;
+		pills=swap;
+		swap=lastPowerPills;
+		lastPowerPills=powerPills;
+		powerPills=swap;
+		readPills(game);
+
+		writeFlipped(lastPills,pills);
+		writeFlipped(lastPowerPills,powerPills);
+
+		sinceKeyframe++;
+	}
+
+	private void readPills(Game game)
+	{
+		pills.clear();
+		powerPills.clear();
+
+		for(int i=0;i<game.getNumberOfPills();i++)
+			if(game.isPillStillAvailable(i))
+				pills.set(i);
+
+		for(int i=0;i<game.getNumberOfPowerPills();i++)
+			if(game.isPowerPillStillAvailable(i))
+				powerPills.set(i);
+	}
+
+	private void writeBitmap(BitSet bits,int length)
+	{
+		ReplayFormat.putVarint(buffer,length);
+
+		for(int i=0;i<length;i+=8)
+		{
+			int b=0;
+
+			for(int j=0;j<8 && i+j<length;j++)
+				if(bits.get(i+j))
+					b|=1<<j;
+
+			buffer.put((byte)b);
+		}
+	}
+
+	private void writeFlipped(BitSet before,BitSet after)
+	{
+		flipped.clear();
+		flipped.or(before);
+		flipped.xor(after);
+
+		ReplayFormat.putVarint(buffer,flipped.cardinality());
+
+		for(int i=flipped.nextSetBit(0),last=0;i>=0;last=i,i=flipped.nextSetBit(i+1))
+			ReplayFormat.putVarint(buffer,i-last);
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		flushed+=buffer.remaining();
+
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+}
@@ -0,0 +1,185 @@
+package pacman.game.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.game.Game;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Generates training data by playing games without visuals on a pool of threads and streaming
+ * every transition to binary shards through a ShardWriter. Games are played as in
+ * Executor.runExperiment(): episode i uses the i-th seed drawn from new Random(seed), and each time
+ * step the controllers compute their moves on a snapshot of the game, with DELAY milliseconds to
+ * do so. Each thread has its own Ms Pac-Man controller, since controllers keep state between
+ * moves, and each episode its own ghost controller. The episode's seed also seeds the global
+ * reversals and the ghost controller, so a dataset can be generated again from its seed (as long
+ * as the Ms Pac-Man controller makes no random choices).
+ *
+ * Usage: java pacman.game.util.SelfPlay directory episodes [threads [shardMegabytes]]
+ */
+public class SelfPlay
+{
+	private final Supplier<? extends Controller<MOVE>> pacManFactory;
+	private final LongFunction<? extends Controller<EnumMap<GHOST,MOVE>>> ghostFactory;
+	private final int threads;
+	private final long timeLimit;
+
+	/**
+	 * Creates a generator.
+	 *
+	 * @param pacManFactory Creates the Ms Pac-Man controller of each thread
+	 * @param ghostFactory Creates the ghost controller of each episode, making random choices drawn from the given seed
+	 * @param threads The number of threads playing games
+	 * @param timeLimit The milliseconds the controllers get per move, DELAY as in runExperiment()
+	 */
+	public SelfPlay(Supplier<? extends Controller<MOVE>> pacManFactory,LongFunction<? extends Controller<EnumMap<GHOST,MOVE>>> ghostFactory,int threads,long timeLimit)
+	{
+		this.pacManFactory=pacManFactory;
+		this.ghostFactory=ghostFactory;
+		this.threads=threads;
+		this.timeLimit=timeLimit;
+	}
+
+	/**
+	 * Plays the episodes and writes their transitions; returns once all are written.
+	 *
+	 * @param episodes The number of episodes
+	 * @param seed The seed the games' seeds are drawn from
+	 * @param writer The writer of the shards; it is not closed
+	 * @return The number of transitions
+	 * @throws IOException If writing fails
+	 */
+	public long run(int episodes,long seed,ShardWriter writer) throws IOException
+	{
+		long[] seeds=new long[episodes];
+		Random rnd=new Random(seed);
+
+		for(int i=0;i<episodes;i++)
+			seeds[i]=rnd.nextLong();
+
+		AtomicInteger next=new AtomicInteger();
+		ExecutorService pool=Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Long>> workers=new ArrayList<Future<Long>>();
+
+		for(int i=0;i<threads;i++)
+			workers.add(pool.submit(() -> play(seeds,next,writer)));
+
+		pool.shutdown();
+
+		long transitions=0;
+
+		try
+		{
+			for(Future<Long> worker : workers)
+				transitions+=worker.get();
+		}
+		catch(InterruptedException e)
+		{
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while playing",e);
+		}
+		catch(ExecutionException e)
+		{
+			pool.shutdownNow();
+
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+
+			throw new IOException("Playing failed",e.getCause());
+		}
+
+		return transitions;
+	}
+
+	//runs on a pool thread: plays episodes until there are none left
+	private long play(long[] seeds,AtomicInteger next,ShardWriter writer) throws IOException
+	{
+		Controller<MOVE> pacManController=pacManFactory.get();
+		int[] state=new int[Game.STATE_VECTOR_LENGTH];
+		ByteBuffer block=writer.takeBlock();
+		long transitions=0;
+
+		try
+		{
+			for(int episode=next.getAndIncrement();episode<seeds.length;episode=next.getAndIncrement())
+			{
+				Game game=new Game(seeds[episode]);
+				game.setReversalSeed(seeds[episode]);
+				Controller<EnumMap<GHOST,MOVE>> ghostController=ghostFactory.apply(seeds[episode]);
+
+				while(!game.gameOver())
+				{
+					Game snapshot=game.snapshot();
+
+					MOVE pacManMove=pacManController.computeMove(snapshot,System.currentTimeMillis()+timeLimit);
+					EnumMap<GHOST,MOVE> ghostMoves=ghostController.computeMove(snapshot,System.currentTimeMillis()+timeLimit);
+
+					int score=game.getScore();
+					game.advanceGame(pacManMove,ghostMoves);
+
+					if(ShardWriter.isFull(block))
+					{
+						writer.submit(block);
+						block=writer.takeBlock();
+					}
+
+					//the snapshot is read-only, so it still holds the state before the step
+					ShardWriter.put(block,episode,snapshot,state,pacManMove==null ? MOVE.NEUTRAL.ordinal() : pacManMove.ordinal(),game.getScore()-score,game.gameOver());
+					transitions++;
+				}
+
+				ghostController.terminate();
+			}
+		}
+		finally
+		{
+			writer.submit(block);
+			pacManController.terminate();
+		}
+
+		return transitions;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length<2)
+		{
+			System.out.println("Usage: java pacman.game.util.SelfPlay directory episodes [threads [shardMegabytes]]");
+			return;
+		}
+
+		int episodes=Integer.parseInt(args[1]);
+		int threads=args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long shardBytes=(args.length>3 ? Long.parseLong(args[3]) : 256)<<20;
+
+		SelfPlay selfPlay=new SelfPlay(StarterPacMan::new,StarterGhosts::new,threads,DELAY);
+		long start=System.currentTimeMillis();
+		long transitions;
+
+		try(ShardWriter writer=new ShardWriter(args[0],shardBytes,4*threads))
+		{
+			transitions=selfPlay.run(episodes,0,writer);
+		}
+
+		long elapsed=System.currentTimeMillis()-start;
+		System.out.println(transitions+" transitions of "+episodes+" episodes written in "+elapsed+" ms ("+transitions*1000/Math.max(1,elapsed)+" per second)");
+	}
+}
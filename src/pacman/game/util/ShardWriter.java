@@ -0,0 +1,335 @@
+package pacman.game.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import pacman.game.Game;
+
+/**
+ * Writes transitions (state, action, reward, done) to binary shard files on a thread of its own.
+ * Producers fill blocks of up to BLOCK transitions, taken from and returned to a fixed pool, and
+ * hand them over through a bounded queue, so a producer waits when the writer falls behind and
+ * memory use stays fixed. A shard is started whenever the next transition would make the current
+ * one larger than the size limit; the shards are named shard-00000.bin, shard-00001.bin... and are
+ * listed, with their number of transitions, in manifest.csv, which is rewritten as each shard is
+ * completed. Shards and the manifest left in the directory by an earlier run are deleted when the
+ * writer is created, so the directory only ever holds the shards of one run.
+ *
+ * A shard is a header (MAGIC, VERSION as a byte, Game.STATE_VECTOR_LENGTH as a short and
+ * RECORD_BYTES as a short) followed by records of RECORD_BYTES, all little-endian:
+ *
+ * the episode (int), the state vector before the step (Game.STATE_VECTOR_LENGTH ints, see
+ * Game.getStateVector()), a bitmap of the pills still available (PILL_BYTES, lowest bit first) and
+ * of the power pills (1 byte), the ordinal of Ms Pac-Man's move (byte), the points scored in the
+ * step (int) and whether the game is over after it (byte).
+ *
+ * The blocks of different producers are interleaved, but the transitions of an episode appear in
+ * order.
+ */
+public class ShardWriter implements Closeable
+{
+	public static final int MAGIC=0x48534D50;	//"PMSH" when read little-endian
+	public static final byte VERSION=1;
+	public static final int HEADER_BYTES=4+1+2+2;
+	public static final int PILL_BYTES=32;		//mazes have fewer than 256 pills
+	public static final int RECORD_BYTES=4+Game.STATE_VECTOR_LENGTH*4+PILL_BYTES+1+1+4+1;
+	public static final int BLOCK=1024;			//transitions per block
+
+	private final File directory;
+	private final long recordsPerShard;
+	private final BlockingQueue<ByteBuffer> full,free;
+	private final Thread thread;
+
+	private final StringBuilder manifest;
+	private FileChannel shard;
+	private int shards;
+	private volatile long written;
+	private volatile IOException failure;
+
+	/**
+	 * Creates the writer and starts its thread.
+	 *
+	 * @param directory The directory to write the shards to; created if necessary, and emptied of
+	 *            the shards and manifest of an earlier run
+	 * @param shardBytes The largest size of a shard, in bytes
+	 * @param blocks The number of blocks in the pool: producers wait when all are in use
+	 * @throws IOException If the directory cannot be created or old shards cannot be deleted
+	 */
+	public ShardWriter(String directory,long shardBytes,int blocks) throws IOException
+	{
+		this.directory=new File(directory);
+
+		if(!this.directory.isDirectory() && !this.directory.mkdirs())
+			throw new IOException("Cannot create directory "+directory);
+
+		if(shardBytes<HEADER_BYTES+RECORD_BYTES)
+			throw new IllegalArgumentException("A shard cannot hold a single transition in "+shardBytes+" bytes");
+
+		File[] old=this.directory.listFiles((dir,name) -> name.matches("shard-\\d+\\.bin") || name.equals("manifest.csv"));
+
+		for(File file : old==null ? new File[0] : old)
+			if(!file.delete())
+				throw new IOException("Cannot delete "+file+" of an earlier run");
+
+		recordsPerShard=(shardBytes-HEADER_BYTES)/RECORD_BYTES;
+		full=new ArrayBlockingQueue<ByteBuffer>(blocks+1);
+		free=new ArrayBlockingQueue<ByteBuffer>(blocks);
+
+		for(int i=0;i<blocks;i++)
+			free.add(newBlock());
+
+		manifest=new StringBuilder("shard,transitions\n");
+
+		thread=new Thread(this::drain,"Shard writer");
+		thread.start();
+	}
+
+	/**
+	 * Takes an empty block from the pool, waiting until one is free.
+	 *
+	 * @return The block, positioned at its start
+	 * @throws IOException If writing has failed or the thread is interrupted
+	 */
+	public ByteBuffer takeBlock() throws IOException
+	{
+		try
+		{
+			ByteBuffer block;
+
+			//check now and then whether the writer is still there to return blocks to the pool
+			do
+				checkFailure();
+			while((block=free.poll(100,TimeUnit.MILLISECONDS))==null);
+
+			return block;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a block",e);
+		}
+	}
+
+	/**
+	 * Appends a transition to a block. The block must have room for it (see isFull()).
+	 *
+	 * @param block The block
+	 * @param episode The episode the transition belongs to
+	 * @param game The game before the step
+	 * @param state An array of length Game.STATE_VECTOR_LENGTH to use
+	 * @param action The ordinal of Ms Pac-Man's move
+	 * @param reward The points scored in the step
+	 * @param done Whether the game is over after the step
+	 */
+	public static void put(ByteBuffer block,int episode,Game game,int[] state,int action,int reward,boolean done)
+	{
+		block.putInt(episode);
+		game.getStateVector(state);
+
+		for(int value : state)
+			block.putInt(value);
+
+		putBitmap(block,game.getNumberOfPills(),PILL_BYTES,true,game);
+		putBitmap(block,game.getNumberOfPowerPills(),1,false,game);
+
+		block.put((byte)action).putInt(reward).put((byte)(done ? 1 : 0));
+	}
+
+	/**
+	 * Checks whether a block has no room for another transition.
+	 *
+	 * @param block The block
+	 * @return Whether it is full
+	 */
+	public static boolean isFull(ByteBuffer block)
+	{
+		return block.remaining()<RECORD_BYTES;
+	}
+
+	/**
+	 * Hands a block over to be written, waiting if the queue is full. Empty blocks are returned to
+	 * the pool.
+	 *
+	 * @param block The block, with its transitions before its position
+	 * @throws IOException If writing has failed or the thread is interrupted
+	 */
+	public void submit(ByteBuffer block) throws IOException
+	{
+		checkFailure();
+
+		try
+		{
+			if(block.position()==0)
+				free.put(block);
+			else
+				full.put(block);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while submitting a block",e);
+		}
+	}
+
+	/**
+	 * Returns the number of transitions written so far.
+	 *
+	 * @return The number of transitions
+	 */
+	public long getWritten()
+	{
+		return written;
+	}
+
+	/**
+	 * Writes the blocks submitted so far, completes the last shard and the manifest and stops the
+	 * thread. Producers must not submit blocks any more.
+	 *
+	 * @throws IOException If writing has failed
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			full.put(ByteBuffer.allocate(0));	//marks the end
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing",e);
+		}
+
+		checkFailure();
+	}
+
+	//runs on the writer thread
+	private void drain()
+	{
+		long inShard=0;
+
+		try
+		{
+			while(true)
+			{
+				ByteBuffer block=full.take();
+
+				if(block.capacity()==0)
+					break;
+
+				block.flip();
+
+				while(block.hasRemaining())
+				{
+					if(shard==null || inShard==recordsPerShard)
+					{
+						completeShard(inShard);
+						openShard();
+						inShard=0;
+					}
+
+					int records=(int)Math.min(block.remaining()/RECORD_BYTES,recordsPerShard-inShard);
+					int limit=block.limit();
+
+					block.limit(block.position()+records*RECORD_BYTES);
+
+					while(block.hasRemaining())
+						shard.write(block);
+
+					block.limit(limit);
+					inShard+=records;
+					written+=records;
+				}
+
+				block.clear();
+				free.put(block);
+			}
+
+			completeShard(inShard);
+		}
+		catch(IOException e)
+		{
+			failure=e;
+		}
+		catch(InterruptedException e)
+		{
+			failure=new IOException("Interrupted while writing",e);
+		}
+		finally
+		{
+			try
+			{
+				if(shard!=null)
+					shard.close();
+			}
+			catch(IOException e)
+			{
+				if(failure==null)
+					failure=e;
+			}
+		}
+	}
+
+	private void openShard() throws IOException
+	{
+		File file=new File(directory,String.format("shard-%05d.bin",shards++));
+		shard=FileChannel.open(file.toPath(),StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE);
+
+		ByteBuffer header=ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).put(VERSION).putShort((short)Game.STATE_VECTOR_LENGTH).putShort((short)RECORD_BYTES).flip();
+
+		while(header.hasRemaining())
+			shard.write(header);
+	}
+
+	private void completeShard(long records) throws IOException
+	{
+		if(shard==null)
+			return;
+
+		shard.close();
+		shard=null;
+		manifest.append(String.format("shard-%05d.bin,%d%n",shards-1,records));
+
+		try(PrintWriter writer=new PrintWriter(new FileOutputStream(new File(directory,"manifest.csv"))))
+		{
+			writer.print(manifest);
+		}
+	}
+
+	private void checkFailure() throws IOException
+	{
+		if(failure!=null)
+			throw new IOException("Writing the shards failed",failure);
+	}
+
+	private static ByteBuffer newBlock()
+	{
+		return ByteBuffer.allocateDirect(BLOCK*RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	//blocks are reused, so the bitmap is padded with zeros to its full size
+	private static void putBitmap(ByteBuffer block,int count,int bytes,boolean pills,Game game)
+	{
+		for(int i=0;i<bytes*8;i+=8)
+		{
+			int b=0;
+
+			for(int j=0;j<8 && i+j<count;j++)
+				if(pills ? game.isPillStillAvailable(i+j) : game.isPowerPillStillAvailable(i+j))
+					b|=1<<j;
+
+			block.put((byte)b);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package pacman.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted by every call of Game.advanceGame(). Searches advance copies of the game millions of
+ * times, so the event is disabled by default even while recording; enable it explicitly (for
+ * instance in a custom .jfc settings file) to profile the simulator itself.
+ */
+@Name("pacman.GameAdvance")
+@Label("Game Advance")
+@Category({"Pac-Man","Game"})
+@Description("One time step simulated by Game.advanceGame(), in the real game or a copy")
+@Enabled(false)
+public class GameAdvanceEvent extends jdk.jfr.Event
+{
+	@Label("Tick")
+	public int tick;
+	
+	@Label("Maze")
+	public int maze;
+}
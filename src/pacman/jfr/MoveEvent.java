@@ -0,0 +1,29 @@
+package pacman.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted around every move a controller computes (Controller.computeMove()).
+ */
+@Name("pacman.Move")
+@Label("Controller Move")
+@Category({"Pac-Man","Controller"})
+@Description("One call of a controller's getMove()")
+public class MoveEvent extends jdk.jfr.Event
+{
+	@Label("Controller")
+	public String controller;
+	
+	@Label("Tick")
+	public int tick;
+	
+	@Label("Maze")
+	public int maze;
+	
+	@Label("Late")
+	@Description("Whether the move was finished after it was due")
+	public boolean late;
+}
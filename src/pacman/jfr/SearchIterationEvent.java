@@ -0,0 +1,40 @@
+package pacman.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted by the search agents for each iteration of their search: one MCTS iteration
+ * (selection, playout and backpropagation), or one depth of an iteratively deepened minimax or
+ * alpha-beta search.
+ */
+@Name("pacman.SearchIteration")
+@Label("Search Iteration")
+@Category({"Pac-Man","Search"})
+@Description("One iteration of an agent's search")
+public class SearchIterationEvent extends jdk.jfr.Event
+{
+	@Label("Controller")
+	public String controller;
+	
+	@Label("Tick")
+	public int tick;
+	
+	@Label("Iteration")
+	@Description("MCTS iteration number, or the depth searched")
+	public int iteration;
+	
+	@Label("Depth")
+	@Description("Depth of the node reached (MCTS) or of the search (minimax)")
+	public int depth;
+	
+	@Label("Nodes")
+	@Description("Nodes in the MCTS tree, or nodes expanded by this iteration")
+	public long nodes;
+	
+	@Label("Completed")
+	@Description("False if the iteration was cut short because the move was due")
+	public boolean completed;
+}
@@ -0,0 +1,60 @@
+package pacman.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import pacman.game.Game;
+
+/**
+ * Emitted by the Executor loops for every time step of the real game: the duration covers handing
+ * the state to the controllers, waiting for them and advancing the game. The replied flags show
+ * whether a controller had a move ready, and the fell back flags whether one that had not replied
+ * had at least published a move for the time step, so deadline misses can be lined up with GC
+ * pauses and other JVM events in the same recording.
+ */
+@Name("pacman.Tick")
+@Label("Game Tick")
+@Category({"Pac-Man","Executor"})
+@Description("One time step of the game played by the Executor")
+public class TickEvent extends jdk.jfr.Event
+{
+	@Label("Tick")
+	public int tick;
+	
+	@Label("Maze")
+	public int maze;
+	
+	@Label("Level")
+	public int level;
+	
+	@Label("Pac-Man Replied")
+	public boolean pacManReplied=true;
+	
+	@Label("Ghosts Replied")
+	public boolean ghostsReplied=true;
+	
+	@Label("Pac-Man Fell Back")
+	public boolean pacManFellBack;
+	
+	@Label("Ghosts Fell Back")
+	public boolean ghostsFellBack;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled, with the state of the game after the time step.
+	 *
+	 * @param game The game just advanced
+	 */
+	public void finish(Game game)
+	{
+		end();
+		
+		if(shouldCommit())
+		{
+			tick=game.getTotalTime();
+			maze=game.getMazeIndex();
+			level=game.getCurrentLevel();
+			commit();
+		}
+	}
+}
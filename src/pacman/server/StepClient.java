@@ -0,0 +1,331 @@
+package pacman.server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import pacman.controllers.examples.StarterGhosts;
+import pacman.game.Game;
+
+import static pacman.game.Constants.*;
+
+/**
+ * A blocking client of StepServer, for agents written in Java and as the reference for clients
+ * in other languages. Each call sends one request and waits for its response; the results are then
+ * read with the accessors, by their index in the request, until the next call. The request and
+ * response buffers are direct and reused, so a call allocates nothing unless a batch is larger
+ * than any before.
+ */
+public class StepClient implements Closeable
+{
+	private final SocketChannel channel;
+	private ByteBuffer out,in;
+	private int[] offsets;	//the position of each result in the response
+	private int count;
+
+	/**
+	 * Connects to a server.
+	 *
+	 * @param address The address of the server: an InetSocketAddress or a UnixDomainSocketAddress
+	 * @throws IOException If the server cannot be reached
+	 */
+	public StepClient(SocketAddress address) throws IOException
+	{
+		channel=address instanceof UnixDomainSocketAddress ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+		channel.connect(address);
+
+		if(!(address instanceof UnixDomainSocketAddress))
+			channel.socket().setTcpNoDelay(true);
+
+		out=ByteBuffer.allocateDirect(1<<12);
+		in=ByteBuffer.allocateDirect(1<<16);
+		offsets=new int[64];
+	}
+
+	/**
+	 * (Re)starts games.
+	 *
+	 * @param ids The ids of the games
+	 * @param seeds The seed of each game
+	 * @param count The number of games, from the start of the arrays
+	 * @throws IOException If the connection fails or the server reports an error
+	 */
+	public void reset(int[] ids,long[] seeds,int count) throws IOException
+	{
+		ByteBuffer request=request(StepProtocol.RESET,count,StepProtocol.RESET_ENTRY);
+
+		for(int i=0;i<count;i++)
+			request.putInt(ids[i]).putLong(seeds[i]);
+
+		exchange();
+	}
+
+	/**
+	 * Advances games by one step.
+	 *
+	 * @param ids The ids of the games
+	 * @param pacManMoves The ordinal of Ms Pac-Man's move in each game
+	 * @param ghostMoves The ordinals of the ghosts' moves, NUM_GHOSTS per game, with -1 to let the
+	 * server choose; null to let it choose all of them
+	 * @param count The number of games, from the start of the arrays
+	 * @throws IOException If the connection fails or the server reports an error
+	 */
+	public void step(int[] ids,int[] pacManMoves,int[] ghostMoves,int count) throws IOException
+	{
+		ByteBuffer request=request(StepProtocol.STEP,count,StepProtocol.STEP_ENTRY);
+
+		for(int i=0;i<count;i++)
+		{
+			request.putInt(ids[i]).put((byte)pacManMoves[i]);
+
+			for(int j=0;j<NUM_GHOSTS;j++)
+				request.put(ghostMoves==null ? StepProtocol.AUTO : (byte)ghostMoves[i*NUM_GHOSTS+j]);
+		}
+
+		exchange();
+	}
+
+	/**
+	 * Returns the number of results of the last call.
+	 *
+	 * @return The number of games in the last request
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the id of a game of the last call.
+	 *
+	 * @param index The index of the game in the last request
+	 * @return The id
+	 */
+	public int getId(int index)
+	{
+		return in.getInt(offsets[index]);
+	}
+
+	/**
+	 * Returns the points a game of the last call scored in its step.
+	 *
+	 * @param index The index of the game in the last request
+	 * @return The points; 0 after a reset
+	 */
+	public int getReward(int index)
+	{
+		return in.getInt(offsets[index]+4);
+	}
+
+	/**
+	 * Returns whether a game of the last call is over.
+	 *
+	 * @param index The index of the game in the last request
+	 * @return Whether the game is over
+	 */
+	public boolean isGameOver(int index)
+	{
+		return in.get(offsets[index]+8)!=0;
+	}
+
+	/**
+	 * Copies the state vector of a game of the last call (see Game.getStateVector()).
+	 *
+	 * @param index The index of the game in the last request
+	 * @param state The array to fill; must hold Game.STATE_VECTOR_LENGTH ints
+	 * @return The array
+	 */
+	public int[] getStateVector(int index,int[] state)
+	{
+		int position=offsets[index]+9;
+
+		for(int i=0;i<Game.STATE_VECTOR_LENGTH;i++)
+			state[i]=in.getInt(position+4*i);
+
+		return state;
+	}
+
+	/**
+	 * Checks whether a pill is still available in a game of the last call.
+	 *
+	 * @param index The index of the game in the last request
+	 * @param pillIndex The index of the pill, as in Game.isPillStillAvailable()
+	 * @return Whether the pill is still available
+	 */
+	public boolean isPillStillAvailable(int index,int pillIndex)
+	{
+		int position=offsets[index]+9+Game.STATE_VECTOR_LENGTH*4+2;
+		return (in.get(position+(pillIndex>>3))&(1<<(pillIndex&7)))!=0;
+	}
+
+	/**
+	 * Checks whether a power pill is still available in a game of the last call.
+	 *
+	 * @param index The index of the game in the last request
+	 * @param powerPillIndex The index of the power pill, as in Game.isPowerPillStillAvailable()
+	 * @return Whether the power pill is still available
+	 */
+	public boolean isPowerPillStillAvailable(int index,int powerPillIndex)
+	{
+		int position=offsets[index]+9+Game.STATE_VECTOR_LENGTH*4;
+		int pills=in.getShort(position);
+		position+=2+(pills+7)/8+1;
+		return (in.get(position+(powerPillIndex>>3))&(1<<(powerPillIndex&7)))!=0;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	//start a request in the request buffer, leaving room for its length
+	private ByteBuffer request(byte type,int count,int entry)
+	{
+		int size=4+1+4+count*entry;
+
+		if(size-4>StepProtocol.MAX_FRAME)
+			throw new IllegalArgumentException("Too many games in one request: "+count);
+
+		if(out.capacity()<size)
+			out=ByteBuffer.allocateDirect(Math.max(size,2*out.capacity()));
+
+		out.clear();
+		out.putInt(size-4).put(type).putInt(count);
+		return out;
+	}
+
+	//send the request and read its response
+	private void exchange() throws IOException
+	{
+		out.flip();
+
+		while(out.hasRemaining())
+			channel.write(out);
+
+		in.clear().limit(4);
+		fill();
+
+		int length=in.getInt(0);
+
+		if(in.capacity()<4+length)
+		{
+			in=ByteBuffer.allocateDirect(Math.max(4+length,2*in.capacity()));
+			in.putInt(length);
+		}
+
+		in.limit(4+length);
+		fill();
+		in.flip().position(4);
+
+		if(in.get()==StepProtocol.ERROR)
+		{
+			byte[] message=new byte[in.getShort()];
+			in.get(message);
+			count=0;
+			throw new IOException(new String(message,StandardCharsets.UTF_8));
+		}
+
+		count=in.getInt();
+
+		if(offsets.length<count)
+			offsets=new int[Math.max(count,2*offsets.length)];
+
+		for(int i=0;i<count;i++)
+		{
+			offsets[i]=in.position();
+			in.position(in.position()+9);
+			StepProtocol.skipObservation(in);
+		}
+	}
+
+	private void fill() throws IOException
+	{
+		while(in.hasRemaining())
+			if(channel.read(in)<0)
+				throw new EOFException("The server closed the connection");
+	}
+
+	/*
+	 * Measures the steps per second served over the loopback for several batch sizes, with random
+	 * moves for Ms Pac-Man and StarterGhosts for the ghosts. Starts its own server, on a TCP port or,
+	 * if a path is given, a Unix domain socket.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		SocketAddress address;
+
+		if(args.length>0)
+		{
+			Path path=Path.of(args[0]);
+			Files.deleteIfExists(path);
+			address=UnixDomainSocketAddress.of(path);
+		}
+		else
+			address=new InetSocketAddress(InetAddress.getLoopbackAddress(),0);
+
+		StepServer server=new StepServer(address,StarterGhosts::new);
+		Thread thread=new Thread(server,"StepServer");
+		thread.start();
+
+		try(StepClient client=new StepClient(server.getAddress()))
+		{
+			Random rnd=new Random(0);
+
+			for(int batch : new int[]{1,16,256})
+			{
+				int[] ids=new int[batch],pacManMoves=new int[batch],done=new int[batch];
+				long[] seeds=new long[batch];
+
+				for(int i=0;i<batch;i++)
+				{
+					ids[i]=i;
+					seeds[i]=i;
+				}
+
+				client.reset(ids,seeds,batch);
+
+				long steps=0,start=System.nanoTime(),end=start+2_000_000_000L;
+
+				while(System.nanoTime()<end)
+				{
+					for(int i=0;i<batch;i++)
+						pacManMoves[i]=rnd.nextInt(4);
+
+					client.step(ids,pacManMoves,null,batch);
+					steps+=batch;
+
+					int finished=0;
+
+					for(int i=0;i<batch;i++)
+						if(client.isGameOver(i))
+						{
+							done[finished]=ids[i];
+							seeds[finished++]=rnd.nextLong();
+						}
+
+					if(finished>0)
+						client.reset(done,seeds,finished);
+				}
+
+				double seconds=(System.nanoTime()-start)/1e9;
+				System.out.printf("batch %3d: %,.0f steps/s, %,.0f requests/s%n",batch,steps/seconds,steps/seconds/batch);
+			}
+		}
+		finally
+		{
+			server.close();
+			thread.join();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package pacman.server;
+
+import java.nio.ByteBuffer;
+
+import pacman.game.Game;
+
+/**
+ * The messages exchanged by StepServer and StepClient. Every message is a frame: its length in
+ * bytes (int, not counting the length itself) followed by its body. All numbers are big-endian.
+ *
+ * Requests start with a type byte:
+ *
+ * RESET: the number of games (int), then for each its id (int) and seed (long). Each game is
+ * (re)started as new Game(seed), with its global reversals seeded as well, so that a game is
+ * reproducible from its seed and the moves sent.
+ *
+ * STEP: the number of games (int), then for each its id (int), Ms Pac-Man's move and the moves of
+ * the four ghosts (a byte each, the ordinal of MOVE). A ghost move of AUTO lets the server's
+ * ghost controller choose; NEUTRAL keeps the ghost going as advanceGame() does.
+ *
+ * Responses start with a status byte, OK or ERROR. ERROR is followed by a message (a short with
+ * its length and the UTF-8 bytes); the request has then not been applied at all. OK is followed
+ * by the number of games (int) and, in the order of the request, for each: its id (int), the
+ * points scored in the step (int, 0 for a reset), whether the game is over (byte 0 or 1) and its
+ * observation. Stepping a game that is over leaves it unchanged.
+ *
+ * An observation is the state vector of the game (Game.STATE_VECTOR_LENGTH ints, see
+ * Game.getStateVector()), the number of pills (short) followed by a bitmap of those still
+ * available (one bit per pill, lowest bit first), and the same for the power pills (with their
+ * number as a byte).
+ */
+final class StepProtocol
+{
+	static final byte RESET=1,STEP=2;
+	static final byte OK=0,ERROR=1;
+	static final byte AUTO=-1;
+
+	static final int MAX_FRAME=1<<24;
+	static final int RESET_ENTRY=4+8;
+	static final int STEP_ENTRY=4+1+4;
+
+	//the largest observation and result: mazes have fewer than 256 pills
+	static final int MAX_OBSERVATION=Game.STATE_VECTOR_LENGTH*4+2+32+1+1;
+	static final int MAX_RESULT=4+4+1+MAX_OBSERVATION;
+
+	private StepProtocol()
+	{
+	}
+
+	/**
+	 * Writes the observation of a game.
+	 *
+	 * @param out The buffer to write to
+	 * @param game The game
+	 * @param state An array of length Game.STATE_VECTOR_LENGTH to use
+	 */
+	static void putObservation(ByteBuffer out,Game game,int[] state)
+	{
+		game.getStateVector(state);
+
+		for(int value : state)
+			out.putInt(value);
+
+		int pills=game.getNumberOfPills();
+		out.putShort((short)pills);
+
+		for(int i=0;i<pills;i+=8)
+		{
+			int b=0;
+
+			for(int j=0;j<8 && i+j<pills;j++)
+				if(game.isPillStillAvailable(i+j))
+					b|=1<<j;
+
+			out.put((byte)b);
+		}
+
+		int powerPills=game.getNumberOfPowerPills();
+		out.put((byte)powerPills);
+
+		for(int i=0;i<powerPills;i+=8)
+		{
+			int b=0;
+
+			for(int j=0;j<8 && i+j<powerPills;j++)
+				if(game.isPowerPillStillAvailable(i+j))
+					b|=1<<j;
+
+			out.put((byte)b);
+		}
+	}
+
+	/**
+	 * Skips an observation.
+	 *
+	 * @param in The buffer positioned at the observation
+	 */
+	static void skipObservation(ByteBuffer in)
+	{
+		in.position(in.position()+Game.STATE_VECTOR_LENGTH*4);
+
+		int pills=in.getShort();
+		in.position(in.position()+(pills+7)/8);
+
+		int powerPills=in.get();
+		in.position(in.position()+(powerPills+7)/8);
+	}
+}
@@ -0,0 +1,409 @@
+package pacman.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.game.Game;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Hosts games for agents running in other processes, such as trainers written in other
+ * languages: clients connect over a local TCP port or a Unix domain socket, create games with a
+ * seed and advance any number of them per request (see StepProtocol for the messages and
+ * StepClient for a client). The server runs on a single thread with non-blocking NIO channels;
+ * each connection reads into and writes from direct buffers that are reused for all its requests,
+ * so serving a request allocates little besides what the game itself does. The games are shared
+ * by all connections and identified by the ids the clients choose.
+ *
+ * If a ghost controller is supplied, each game gets its own instance, and clients may leave the
+ * ghosts' moves to it (see StepProtocol.AUTO).
+ *
+ * Usage: java pacman.server.StepServer [port | unix:path]
+ */
+public class StepServer implements Runnable, Closeable
+{
+	public static final int DEFAULT_PORT=7777;
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final SocketAddress address;
+	private final Supplier<? extends Controller<EnumMap<GHOST,MOVE>>> ghostFactory;
+
+	private final HashMap<Integer,Game> games;
+	private final HashMap<Integer,Controller<EnumMap<GHOST,MOVE>>> ghostControllers;
+	private final EnumMap<GHOST,MOVE> ghostMoves;
+	private final int[] state;
+	private final MOVE[] moves;
+	private volatile boolean running;
+
+	/**
+	 * Opens the server; it accepts connections once run() is called.
+	 *
+	 * @param address The address to listen on: an InetSocketAddress (port 0 for any free port) or
+	 * a UnixDomainSocketAddress
+	 * @param ghostFactory Creates the ghost controller of each game; null if clients always send
+	 * the ghosts' moves
+	 * @throws IOException If the address cannot be bound
+	 */
+	public StepServer(SocketAddress address,Supplier<? extends Controller<EnumMap<GHOST,MOVE>>> ghostFactory) throws IOException
+	{
+		this.ghostFactory=ghostFactory;
+
+		selector=Selector.open();
+		server=address instanceof UnixDomainSocketAddress ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector,SelectionKey.OP_ACCEPT);
+		this.address=server.getLocalAddress();
+
+		games=new HashMap<Integer,Game>();
+		ghostControllers=new HashMap<Integer,Controller<EnumMap<GHOST,MOVE>>>();
+		ghostMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+		state=new int[Game.STATE_VECTOR_LENGTH];
+		moves=MOVE.values();
+		running=true;
+	}
+
+	/**
+	 * Returns the address the server listens on, with the actual port if port 0 was requested.
+	 *
+	 * @return The address
+	 */
+	public SocketAddress getAddress()
+	{
+		return address;
+	}
+
+	/**
+	 * Serves the clients until the server is closed.
+	 */
+	public void run()
+	{
+		try
+		{
+			while(running)
+			{
+				selector.select();
+
+				Iterator<SelectionKey> keys=selector.selectedKeys().iterator();
+
+				while(keys.hasNext())
+				{
+					SelectionKey key=keys.next();
+					keys.remove();
+
+					try
+					{
+						if(key.isAcceptable())
+							accept();
+						else
+						{
+							if(key.isWritable())
+								write(key);
+
+							if(key.isValid() && key.isReadable())
+								read(key);
+						}
+					}
+					catch(IOException e)
+					{
+						key.cancel();
+						key.channel().close();
+					}
+					catch(RuntimeException e)
+					{
+						//a bad request or a failing ghost controller only costs its own connection
+						e.printStackTrace();
+						key.cancel();
+						key.channel().close();
+					}
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			closeChannels();
+		}
+	}
+
+	/**
+	 * Stops the server and closes all connections.
+	 */
+	public void close()
+	{
+		running=false;
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel=server.accept();
+
+		if(channel==null)
+			return;
+
+		channel.configureBlocking(false);
+		channel.register(selector,SelectionKey.OP_READ,new Connection());
+	}
+
+	private void read(SelectionKey key) throws IOException
+	{
+		SocketChannel channel=(SocketChannel)key.channel();
+		Connection connection=(Connection)key.attachment();
+
+		if(channel.read(connection.in)<0)
+		{
+			key.cancel();
+			channel.close();
+			return;
+		}
+
+		ByteBuffer in=connection.in;
+		in.flip();
+
+		int filled=in.limit();
+
+		while(in.remaining()>=4)
+		{
+			int length=in.getInt(in.position());
+
+			if(length<1 || length>StepProtocol.MAX_FRAME)
+				throw new IOException("Bad frame length "+length);
+
+			if(in.remaining()<4+length)
+			{
+				if(in.capacity()<4+length)
+				{
+					//move the partial frame into a buffer that can hold all of it
+					connection.in=ByteBuffer.allocateDirect(Math.max(4+length,2*in.capacity()));
+					connection.in.put(in);
+					write(key);
+					return;
+				}
+
+				break;
+			}
+
+			int end=in.position()+4+length;
+			in.position(in.position()+4).limit(end);
+			respond(in,connection);
+			in.limit(filled).position(end);
+		}
+
+		in.compact();
+		write(key);
+	}
+
+	private void write(SelectionKey key) throws IOException
+	{
+		Connection connection=(Connection)key.attachment();
+		ByteBuffer out=connection.out;
+
+		out.flip();
+		((SocketChannel)key.channel()).write(out);
+		out.compact();
+
+		//stop reading while responses are pending, so a client that does not read cannot make them pile up
+		key.interestOps(out.position()>0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	//handle the request in the buffer (between its position and limit) and append the response
+	private void respond(ByteBuffer request,Connection connection)
+	{
+		byte type=request.get();
+		int count=request.remaining()>=4 ? request.getInt() : -1;
+		int entry=type==StepProtocol.RESET ? StepProtocol.RESET_ENTRY : StepProtocol.STEP_ENTRY;
+
+		String error=null;
+
+		if(type!=StepProtocol.RESET && type!=StepProtocol.STEP)
+			error="Unknown request type "+type;
+		else if(count<0 || request.remaining()!=(long)count*entry)
+			error="Request length does not match "+count+" games";
+		else if(type==StepProtocol.STEP)
+			error=checkStep(request,count);
+
+		ByteBuffer out=connection.reserve(4+1+4+(error==null ? 0 : 2+3*error.length()));
+		int start=out.position();
+		out.putInt(0);	//the length, filled in below
+
+		if(error!=null)
+		{
+			byte[] message=error.getBytes(StandardCharsets.UTF_8);
+			out.put(StepProtocol.ERROR).putShort((short)message.length).put(message);
+		}
+		else
+		{
+			out.put(StepProtocol.OK).putInt(count);
+
+			for(int i=0;i<count;i++)
+			{
+				out=connection.reserve(StepProtocol.MAX_RESULT);
+
+				if(type==StepProtocol.RESET)
+					reset(request,out);
+				else
+					step(request,out);
+			}
+		}
+
+		out.putInt(start,out.position()-start-4);
+	}
+
+	//check that every game exists and every move is valid before any game is changed
+	private String checkStep(ByteBuffer request,int count)
+	{
+		int position=request.position();
+
+		for(int i=0;i<count;i++)
+		{
+			int id=request.getInt(position+i*StepProtocol.STEP_ENTRY);
+
+			if(!games.containsKey(id))
+				return "Unknown game "+id;
+
+			for(int j=0;j<=NUM_GHOSTS;j++)
+			{
+				byte move=request.get(position+i*StepProtocol.STEP_ENTRY+4+j);
+
+				if(move!=StepProtocol.AUTO && (move<0 || move>=moves.length) || move==StepProtocol.AUTO && j==0)
+					return "Invalid move "+move+" in game "+id;
+
+				if(move==StepProtocol.AUTO && ghostFactory==null)
+					return "The server has no ghost controller to choose the moves of game "+id;
+			}
+		}
+
+		return null;
+	}
+
+	private void reset(ByteBuffer request,ByteBuffer out)
+	{
+		int id=request.getInt();
+		long seed=request.getLong();
+
+		Game game=new Game(seed);
+		game.setReversalSeed(seed);
+		games.put(id,game);
+
+		if(ghostFactory!=null)
+			ghostControllers.put(id,ghostFactory.get());
+
+		out.putInt(id).putInt(0).put((byte)0);
+		StepProtocol.putObservation(out,game,state);
+	}
+
+	private void step(ByteBuffer request,ByteBuffer out)
+	{
+		int id=request.getInt();
+		Game game=games.get(id);
+		MOVE pacManMove=moves[request.get()];
+		EnumMap<GHOST,MOVE> auto=null;
+		int score=game.getScore();
+
+		for(GHOST ghost : GHOST.values())
+		{
+			byte move=request.get();
+
+			if(move==StepProtocol.AUTO)
+			{
+				if(auto==null)
+					auto=ghostControllers.get(id).getMove(game.copy(),-1);
+
+				MOVE chosen=auto==null ? null : auto.get(ghost);
+				ghostMoves.put(ghost,chosen==null ? MOVE.NEUTRAL : chosen);
+			}
+			else
+				ghostMoves.put(ghost,moves[move]);
+		}
+
+		if(!game.gameOver())
+			game.advanceGame(pacManMove,ghostMoves);
+
+		out.putInt(id).putInt(game.getScore()-score).put((byte)(game.gameOver() ? 1 : 0));
+		StepProtocol.putObservation(out,game,state);
+	}
+
+	private void closeChannels()
+	{
+		try
+		{
+			for(SelectionKey key : selector.keys())
+				key.channel().close();
+
+			selector.close();
+
+			if(address instanceof UnixDomainSocketAddress)
+				Files.deleteIfExists(((UnixDomainSocketAddress)address).getPath());
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	//the buffers of a connection: requests are read into in and responses collected in out
+	private static class Connection
+	{
+		ByteBuffer in=ByteBuffer.allocateDirect(1<<16);
+		ByteBuffer out=ByteBuffer.allocateDirect(1<<16);
+
+		//the response buffer, with room for at least the given number of bytes
+		ByteBuffer reserve(int bytes)
+		{
+			if(out.remaining()<bytes)
+			{
+				ByteBuffer larger=ByteBuffer.allocateDirect(Math.max(out.position()+bytes,2*out.capacity()));
+				out.flip();
+				larger.put(out);
+				out=larger;
+			}
+
+			return out;
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		SocketAddress address;
+
+		if(args.length>0 && args[0].startsWith("unix:"))
+		{
+			Path path=Path.of(args[0].substring(5));
+			Files.deleteIfExists(path);
+			address=UnixDomainSocketAddress.of(path);
+		}
+		else
+			address=new InetSocketAddress(InetAddress.getLoopbackAddress(),args.length>0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+
+		StepServer server=new StepServer(address,StarterGhosts::new);
+		System.out.println("Serving games on "+server.getAddress());
+		server.run();
+	}
+}